@@ -0,0 +1,40 @@
+#!/bin/sh
+# Builds the sample and the JMH benchmarks with javac and runs them, the
+# same suite as the Benchmarks launch configuration without Eclipse.
+#
+#   JMH_HOME     directory holding jmh-core-1.37.jar,
+#                jmh-generator-annprocess-1.37.jar, jopt-simple-5.0.4.jar
+#                and commons-math3-3.6.1.jar
+#   OPENNI_HOME  OpenNI 1 install directory; or set OPENNI_JAR to the
+#                org.OpenNI.jar to compile against
+#
+# Arguments are passed on to org.openjdk.jmh.Main, for example
+#   bench/run.sh DepthBenchmark -p roi=true
+# Without arguments every benchmark runs and the results are written to
+# bench/bench_output.json.
+set -e
+
+cd "$(dirname "$0")"
+: "${JMH_HOME:?set JMH_HOME to the directory with the JMH jars}"
+OPENNI_JAR=${OPENNI_JAR:-${OPENNI_HOME:?set OPENNI_HOME or OPENNI_JAR}/Bin64/org.OpenNI.jar}
+
+case "$(uname -s)" in
+MINGW* | MSYS* | CYGWIN*) SEP=';' ;;
+*) SEP=':' ;;
+esac
+
+CP="$OPENNI_JAR"
+for jar in jmh-core-1.37 jopt-simple-5.0.4 commons-math3-3.6.1; do
+	CP="$CP$SEP$JMH_HOME/$jar.jar"
+done
+
+rm -rf bin .apt_generated
+mkdir -p bin .apt_generated
+javac -source 8 -target 8 -encoding UTF-8 -nowarn -d bin -s .apt_generated \
+	-cp "$CP" -processorpath "$JMH_HOME/jmh-generator-annprocess-1.37.jar$SEP$JMH_HOME/jmh-core-1.37.jar" \
+	$(find ../src src -name '*.java')
+
+if [ $# -eq 0 ]; then
+	set -- -rf json -rff bench_output.json
+fi
+exec java -Djava.awt.headless=true -cp "bin$SEP$CP" org.openjdk.jmh.Main "$@"
@@ -0,0 +1,68 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Depth histogram and colorization of {@link DepthProcessor} on synthetic
+ * frames, single-threaded and striped over the common fork/join pool, over
+ * the whole frame and around the users only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DepthBenchmark {
+
+	@Param({ "640x480", "1280x1024" })
+	public String resolution;
+
+	@Param({ "false", "true" })
+	public boolean parallel;
+
+	@Param({ "false", "true" })
+	public boolean roi;
+
+	private Frame frame;
+	private DepthProcessor processor;
+
+	@Setup
+	public void setup() {
+		String[] size = resolution.split("x");
+		int width = Integer.parseInt(size[0]);
+		int height = Integer.parseInt(size[1]);
+
+		frame = new Frame(width, height);
+		new SyntheticFrameSource(width, height, 2).readFrame(frame);
+		processor = new DepthProcessor(ForkJoinPool.commonPool(), parallel ? 0 : Integer.MAX_VALUE);
+		processor.setRegionOfInterest(roi);
+		processor.process(frame);
+	}
+
+	@Benchmark
+	public Frame calcHist() {
+		processor.calcHist(frame, roi);
+		return frame;
+	}
+
+	@Benchmark
+	public byte[] colorize() {
+		processor.colorize();
+		return frame.image;
+	}
+
+	@Benchmark
+	public byte[] updateDepth() {
+		processor.process(frame);
+		return frame.image;
+	}
+
+}
@@ -0,0 +1,119 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Histogram and colorization over direct native-order buffers like the ones
+ * OpenNI hands out: relative {@code ShortBuffer.get()} per pixel against one
+ * bulk copy into {@code short[]} followed by the array loops of
+ * {@link DepthProcessor}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DepthLoopBenchmark {
+
+	@Param({ "640x480", "1280x1024" })
+	public String resolution;
+
+	private ShortBuffer depthBuffer;
+	private ShortBuffer sceneBuffer;
+	private Frame frame;
+	private DepthProcessor processor;
+
+	private final float[] histogram = new float[DepthProcessor.MAX_DEPTH];
+	private final int[] colorTable = new int[DepthProcessor.colors.length * DepthProcessor.MAX_DEPTH];
+	private byte[] imgbytes;
+
+	@Setup
+	public void setup() {
+		String[] size = resolution.split("x");
+		int width = Integer.parseInt(size[0]);
+		int height = Integer.parseInt(size[1]);
+
+		frame = new Frame(width, height);
+		new SyntheticFrameSource(width, height, 2).readFrame(frame);
+
+		depthBuffer = ByteBuffer.allocateDirect(width * height * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+		depthBuffer.put(frame.depth).flip();
+		sceneBuffer = ByteBuffer.allocateDirect(width * height * 2).order(ByteOrder.nativeOrder()).asShortBuffer();
+		sceneBuffer.put(frame.scene).flip();
+
+		processor = new DepthProcessor(ForkJoinPool.commonPool(), Integer.MAX_VALUE);
+		imgbytes = new byte[width * height * 3];
+	}
+
+	@Benchmark
+	public byte[] relativeBufferGet() {
+		ShortBuffer depth = depthBuffer;
+		ShortBuffer scene = sceneBuffer;
+		int[] colors = DepthProcessor.colors;
+
+		for (int i = 0; i < histogram.length; ++i)
+			histogram[i] = 0;
+		depth.rewind();
+		int points = 0;
+		while (depth.remaining() > 0) {
+			short depthVal = depth.get();
+			if (depthVal != 0) {
+				histogram[depthVal]++;
+				points++;
+			}
+		}
+		for (int i = 1; i < histogram.length; i++)
+			histogram[i] += histogram[i - 1];
+		if (points > 0) {
+			for (int i = 1; i < histogram.length; i++)
+				histogram[i] = 1.0f - (histogram[i] / (float) points);
+		}
+		for (int c = 0; c < colors.length; ++c) {
+			for (int d = 1; d < DepthProcessor.MAX_DEPTH; ++d) {
+				float histValue = histogram[d];
+				colorTable[c * DepthProcessor.MAX_DEPTH + d] = (((int) (histValue * ((colors[c] >> 16) & 0xFF)) & 0xFF) << 16)
+						| (((int) (histValue * ((colors[c] >> 8) & 0xFF)) & 0xFF) << 8)
+						| ((int) (histValue * (colors[c] & 0xFF)) & 0xFF);
+			}
+		}
+
+		depth.rewind();
+		scene.rewind();
+		while (depth.remaining() > 0) {
+			int pos = depth.position();
+			short pixel = depth.get();
+			short user = scene.get();
+			int rgb = 0;
+			if (pixel != 0) {
+				int colorID = user == 0 ? colors.length - 1 : user % (colors.length - 1);
+				rgb = colorTable[colorID * DepthProcessor.MAX_DEPTH + pixel];
+			}
+			imgbytes[3 * pos] = (byte) (rgb >> 16);
+			imgbytes[3 * pos + 1] = (byte) (rgb >> 8);
+			imgbytes[3 * pos + 2] = (byte) rgb;
+		}
+		return imgbytes;
+	}
+
+	@Benchmark
+	public byte[] bulkCopyArrayLoop() {
+		depthBuffer.rewind();
+		depthBuffer.get(frame.depth);
+		sceneBuffer.rewind();
+		sceneBuffer.get(frame.scene);
+		processor.process(frame);
+		return frame.image;
+	}
+
+}
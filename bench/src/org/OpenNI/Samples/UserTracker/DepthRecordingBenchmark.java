@@ -0,0 +1,87 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.OpenNI.GeneralException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compressing synthetic frames with {@link DepthRecorder}, and streaming them
+ * back through {@link RecordedDepthSource} with and without the depth
+ * histogram and colorization.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DepthRecordingBenchmark {
+
+	@Param({ "640x480" })
+	public String resolution;
+
+	private Frame frame;
+	private File recorded;
+	private File scratch;
+	private DepthRecorder recorder;
+	private RecordedDepthSource source;
+	private DepthProcessor processor;
+
+	@Setup
+	public void setup() throws IOException {
+		String[] size = resolution.split("x");
+		int width = Integer.parseInt(size[0]);
+		int height = Integer.parseInt(size[1]);
+
+		frame = new Frame(width, height);
+		SyntheticFrameSource synthetic = new SyntheticFrameSource(width, height, 2);
+		recorded = File.createTempFile("depth", ".rec");
+		DepthRecorder writer = new DepthRecorder(recorded, width, height);
+		for (int i = 0; i < 120; ++i) {
+			synthetic.readFrame(frame);
+			writer.frameReady(frame);
+		}
+		writer.close();
+
+		scratch = File.createTempFile("depth", ".rec");
+		recorder = new DepthRecorder(scratch, width, height);
+		source = new RecordedDepthSource(recorded);
+		processor = new DepthProcessor();
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		recorder.close();
+		source.release();
+		recorded.delete();
+		scratch.delete();
+	}
+
+	@Benchmark
+	public long record() {
+		recorder.frameReady(frame);
+		return recorder.getBytesWritten();
+	}
+
+	@Benchmark
+	public Frame replay() throws GeneralException {
+		source.readFrame(frame);
+		return frame;
+	}
+
+	@Benchmark
+	public byte[] replayAndProcess() throws GeneralException {
+		source.readFrame(frame);
+		processor.process(frame);
+		return frame.image;
+	}
+
+}
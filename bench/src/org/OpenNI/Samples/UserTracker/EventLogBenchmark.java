@@ -0,0 +1,59 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost to the caller of an {@link EventLog} event, a lifecycle event and a
+ * 45-value training sample, with the writer discarding its output.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EventLogBenchmark {
+
+	private EventLog log;
+	private final float[] sample = new float[ArffWriter.ROW_LENGTH];
+
+	@Setup
+	public void setup() {
+		log = new EventLog(new Writer() {
+			@Override
+			public void write(char[] buffer, int offset, int length) {
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		}, 4096);
+	}
+
+	@TearDown
+	public void tearDown() {
+		log.close();
+	}
+
+	@Benchmark
+	public boolean newUser() {
+		return log.log(EventLog.Type.NEW_USER, 1, null);
+	}
+
+	@Benchmark
+	public boolean sample() {
+		return log.log(EventLog.Type.SAMPLE, 1, "stay", sample, sample.length);
+	}
+
+}
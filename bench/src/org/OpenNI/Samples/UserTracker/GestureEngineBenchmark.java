@@ -0,0 +1,59 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-frame cost of {@link GestureEngine} for six synthetic users swinging
+ * their arms, against templates of 30 frames cut from the same motion.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GestureEngineBenchmark {
+
+	private static final int FRAMES = 128;
+
+	@Param({ "1", "8" })
+	public int templates;
+
+	private Frame[] frames;
+	private GestureEngine engine;
+	private int next;
+
+	@Setup
+	public void setup() {
+		SyntheticFrameSource source = new SyntheticFrameSource(640, 480, 6);
+		SkeletonProcessor skeleton = new SkeletonProcessor();
+		frames = new Frame[FRAMES];
+		for (int f = 0; f < FRAMES; ++f) {
+			frames[f] = new Frame(640, 480);
+			source.readFrame(frames[f]);
+			skeleton.process(frames[f]);
+		}
+
+		engine = new GestureEngine();
+		for (int f = 0; f < 40; ++f) {
+			engine.frameReady(frames[f]);
+		}
+		for (int t = 0; t < templates; ++t) {
+			engine.addTemplate(engine.captureTemplate(1, "swing" + t, 30, 1));
+		}
+	}
+
+	@Benchmark
+	public long frameReady() {
+		next = (next + 1) & (FRAMES - 1);
+		engine.frameReady(frames[next]);
+		return engine.getEvents();
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * {@link JointFilter} over six synthetic users of 15 joints each, with
+ * sensor-like noise added to every position, with and without prediction.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JointFilterBenchmark {
+
+	private static final int FRAMES = 64;
+
+	@Param({ "0", "33" })
+	public int predictMillis;
+
+	private Frame[] frames;
+	private JointFilter filter;
+	private int next;
+
+	@Setup
+	public void setup() {
+		SyntheticFrameSource source = new SyntheticFrameSource(640, 480, 6);
+		Random random = new Random(7);
+		frames = new Frame[FRAMES];
+		for (int f = 0; f < FRAMES; ++f) {
+			frames[f] = new Frame(640, 480);
+			source.readFrame(frames[f]);
+			for (Frame.User user : frames[f].users) {
+				for (int i = 0; i < Skeleton.LENGTH; ++i) {
+					if (i % Skeleton.STRIDE != Skeleton.CONFIDENCE) {
+						user.joints[i] += (float) random.nextGaussian() * 5;
+					}
+				}
+			}
+		}
+		filter = new JointFilter();
+		filter.setPrediction(predictMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@Benchmark
+	public Frame process() {
+		next = (next + 1) & (FRAMES - 1);
+		filter.process(frames[next]);
+		return frames[next];
+	}
+
+}
@@ -0,0 +1,48 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of {@link PipelineMetrics}: a full {@link SensorSession#update()} of a
+ * synthetic 640x480 frame with two users, with metrics on and off, and a
+ * single timed stage on its own.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MetricsBenchmark {
+
+	@Param({ "false", "true" })
+	public boolean enabled;
+
+	private SensorSession session;
+	private PipelineMetrics metrics;
+
+	@Setup
+	public void setup() {
+		session = new SensorSession(new SyntheticFrameSource(640, 480, 2));
+		session.getMetrics().setEnabled(enabled);
+		metrics = new PipelineMetrics();
+		metrics.setEnabled(enabled);
+	}
+
+	@Benchmark
+	public void update() {
+		session.update();
+	}
+
+	@Benchmark
+	public long record() {
+		return metrics.record(PipelineMetrics.SKELETON, metrics.now());
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * One frame of every synthetic sensor of a {@link SensorManager}, each on its
+ * own thread as the pipelines run them, followed by the merge. With enough
+ * cores the time per step stays close to that of a single sensor.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MultiSensorBenchmark {
+
+	@Param({ "1", "2", "4" })
+	public int sensors;
+
+	private SensorManager manager;
+	private Runnable[] updates;
+	private Future<?>[] pending;
+	private ExecutorService executor;
+
+	@Setup
+	public void setup() {
+		manager = new SensorManager();
+		updates = new Runnable[sensors];
+		pending = new Future<?>[sensors];
+		for (int i = 0; i < sensors; ++i) {
+			final SensorSession session = new SensorSession(new SyntheticFrameSource(640, 480, 2), false);
+			manager.addSensor("synthetic" + i, session, new Extrinsics(90 * i, 0, 0, 0));
+			updates[i] = new Runnable() {
+				@Override
+				public void run() {
+					session.update();
+				}
+			};
+		}
+		executor = Executors.newFixedThreadPool(sensors);
+	}
+
+	@TearDown
+	public void tearDown() {
+		executor.shutdown();
+	}
+
+	@Benchmark
+	public void step() throws Exception {
+		for (int i = 0; i < sensors; ++i) {
+			pending[i] = executor.submit(updates[i]);
+		}
+		for (int i = 0; i < sensors; ++i) {
+			pending[i].get();
+		}
+		manager.merge();
+	}
+
+}
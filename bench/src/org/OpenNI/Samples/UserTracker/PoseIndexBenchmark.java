@@ -0,0 +1,107 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Query time of {@link PoseIndex} against a linear scan as the training set
+ * grows. Samples are noisy copies of a few dozen random poses, made of 15
+ * bone vectors of the normalized length like real recordings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PoseIndexBenchmark {
+
+	private static final int POSES = 40;
+	private static final int QUERIES = 256;
+
+	@Param({ "1000", "10000", "50000" })
+	public int size;
+
+	private PoseDataset dataset;
+	private PoseIndex index;
+	private float[][] queries;
+	private int next;
+	private final int[] nearest = new int[5];
+	private final float[] distances = new float[5];
+	private final int[] within = new int[1024];
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		float[][] poses = new float[POSES][];
+		for (int p = 0; p < POSES; ++p) {
+			poses[p] = randomPose(random, null, 0);
+		}
+		dataset = new PoseDataset(size);
+		for (int i = 0; i < size; ++i) {
+			dataset.add(randomPose(random, poses[i % POSES], 0.2f), "pose" + (i % 3));
+		}
+		index = new PoseIndex(dataset);
+		queries = new float[QUERIES][];
+		for (int q = 0; q < QUERIES; ++q) {
+			queries[q] = randomPose(random, poses[random.nextInt(POSES)], 0.2f);
+		}
+	}
+
+	/** A pose near {@code base}, or a random one if it is null, with every bone normalized. */
+	private static float[] randomPose(Random random, float[] base, float noise) {
+		float[] pose = new float[PoseDataset.DIMENSIONS];
+		for (int b = 0; b < SkeletonProcessor.BONES.length; ++b) {
+			for (int i = 3 * b; i < 3 * b + 3; ++i) {
+				pose[i] = base == null ? (float) random.nextGaussian()
+						: base[i] / SkeletonProcessor.BONE_LENGTH + (float) random.nextGaussian() * noise;
+			}
+			Vector3D.normalize(pose, b);
+			Vector3D.scale(pose, b, SkeletonProcessor.BONE_LENGTH);
+		}
+		return pose;
+	}
+
+	private float[] nextQuery() {
+		next = (next + 1) & (QUERIES - 1);
+		return queries[next];
+	}
+
+	@Benchmark
+	public int nearest() {
+		index.nearest(nextQuery(), nearest, distances);
+		return nearest[0];
+	}
+
+	@Benchmark
+	public int withinRadius() {
+		return index.withinRadius(nextQuery(), 25, within);
+	}
+
+	@Benchmark
+	public int linearScan() {
+		float[] query = nextQuery();
+		float[] data = dataset.getFeatures();
+		int best = -1;
+		float bestDistance = Float.MAX_VALUE;
+		for (int s = 0, base = 0; s < size; ++s, base += PoseDataset.DIMENSIONS) {
+			float sum = 0;
+			for (int i = 0; i < PoseDataset.DIMENSIONS; ++i) {
+				float d = data[base + i] - query[i];
+				sum += d * d;
+			}
+			if (sum < bestDistance) {
+				bestDistance = sum;
+				best = s;
+			}
+		}
+		return best;
+	}
+
+}
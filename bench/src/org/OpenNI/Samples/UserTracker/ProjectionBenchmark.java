@@ -0,0 +1,98 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.OpenNI.DepthGenerator;
+import org.OpenNI.GeneralException;
+import org.OpenNI.Point3D;
+import org.OpenNI.StatusException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Real-world to projective conversion of all joints and centres of mass of
+ * one frame: one JNI call per point, one batched JNI call, and the pure Java
+ * {@link Projection}. The JNI benchmarks need a sensor and SamplesConfig.xml
+ * in the working directory; without them only {@link #pureJava()} runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProjectionBenchmark {
+
+	@State(Scope.Thread)
+	public static class Sensor {
+
+		OpenNIFrameSource source;
+		DepthGenerator depthGen;
+
+		@Setup
+		public void setup() throws GeneralException {
+			source = new OpenNIFrameSource("SamplesConfig.xml");
+			depthGen = source.getDepthGenerator();
+		}
+
+		@TearDown
+		public void tearDown() {
+			source.release();
+		}
+	}
+
+	@Param({ "1", "6" })
+	public int users;
+
+	private Frame frame;
+	private Projection projection;
+	private Point3D[] points;
+
+	@Setup
+	public void setup() {
+		frame = new Frame(640, 480);
+		new SyntheticFrameSource(640, 480, users).readFrame(frame);
+		projection = new Projection(640, 480, Projection.DEFAULT_HFOV, Projection.DEFAULT_VFOV);
+
+		points = new Point3D[users * (Frame.JOINTS.length + 1)];
+		int n = 0;
+		for (Frame.User user : frame.users) {
+			points[n++] = new Point3D(projection.realX(user.comX, user.comZ), projection.realY(user.comY, user.comZ), user.comZ);
+			for (int j = 0; j < Frame.JOINTS.length; ++j) {
+				int offset = Skeleton.offset(Frame.JOINTS[j]);
+				points[n++] = new Point3D(user.joints[offset + Skeleton.X], user.joints[offset + Skeleton.Y], user.joints[offset + Skeleton.Z]);
+			}
+		}
+	}
+
+	@Benchmark
+	public Point3D perJointJni(Sensor sensor) throws StatusException {
+		Point3D last = null;
+		for (int i = 0; i < points.length; ++i) {
+			last = sensor.depthGen.convertRealWorldToProjective(points[i]);
+		}
+		return last;
+	}
+
+	@Benchmark
+	public Point3D[] batchedJni(Sensor sensor) throws StatusException {
+		return sensor.depthGen.convertRealWorldToProjective(points);
+	}
+
+	@Benchmark
+	public Frame pureJava() {
+		for (int u = 0; u < frame.users.size(); ++u) {
+			Frame.User user = frame.users.get(u);
+			projection.toProjective(user.joints);
+			Point3D com = points[u * (Frame.JOINTS.length + 1)];
+			user.comX = projection.projectX(com.getX(), com.getZ());
+			user.comY = projection.projectY(com.getY(), com.getZ());
+		}
+		return frame;
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * One labelled training sample queued by {@link GestureRecognizer#scanVectors(String)}
+ * for a temporary ARFF file, with console output discarded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScanVectorsBenchmark {
+
+	private GestureRecognizer recognizer;
+	private File output;
+	private File header;
+	private PrintStream console;
+
+	@Setup
+	public void setup() throws IOException {
+		SensorSession session = new SensorSession(new SyntheticFrameSource(640, 480, 1));
+		recognizer = new GestureRecognizer(session);
+		session.update();
+		recognizer.paint(new BufferedImage(640, 480, BufferedImage.TYPE_3BYTE_BGR).getGraphics());
+
+		output = File.createTempFile("scanVectors", ".arff");
+		header = File.createTempFile("scanVectors", ".txt");
+		Files.write(header.toPath(), "@relation scanVectors\n".getBytes(StandardCharsets.US_ASCII));
+		recognizer.outputFile = output.getPath();
+		recognizer.headerFile = header.getPath();
+
+		console = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+	}
+
+	@TearDown
+	public void tearDown() {
+		System.setOut(console);
+		recognizer.close();
+		output.delete();
+		header.delete();
+	}
+
+	@Benchmark
+	public void scanVectors() {
+		recognizer.scanVectors("stay");
+	}
+
+}
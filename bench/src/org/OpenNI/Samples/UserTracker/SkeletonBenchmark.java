@@ -0,0 +1,102 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.OpenNI.SkeletonJoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Per-frame skeleton work for a number of tracked synthetic users: storing the
+ * fetched joints in the packed skeletons (the JNI calls themselves are not
+ * included), computing the bone vectors and drawing the skeletons.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SkeletonBenchmark {
+
+	@Param({ "1", "6" })
+	public int users;
+
+	private Frame frame;
+	private float[][] fetched;
+	private SkeletonProcessor skeletonProcessor;
+	private UserTracker tracker;
+	private BufferedImage canvas;
+	private Graphics graphics;
+
+	@Setup
+	public void setup() {
+		SyntheticFrameSource source = new SyntheticFrameSource(640, 480, users);
+		SensorSession session = new SensorSession(source);
+		frame = session.createFrame();
+		source.readFrame(frame);
+
+		// joint positions as they would come back from the sensor
+		fetched = new float[users][];
+		for (int u = 0; u < users; ++u) {
+			Frame.User user = frame.users.get(u);
+			fetched[u] = new float[Frame.JOINTS.length * 4];
+			for (int j = 0; j < Frame.JOINTS.length; ++j) {
+				SkeletonJoint joint = Frame.JOINTS[j];
+				fetched[u][4 * j] = Skeleton.get(user.joints, joint, Skeleton.X);
+				fetched[u][4 * j + 1] = Skeleton.get(user.joints, joint, Skeleton.Y);
+				fetched[u][4 * j + 2] = Skeleton.get(user.joints, joint, Skeleton.Z);
+				fetched[u][4 * j + 3] = Skeleton.get(user.joints, joint, Skeleton.CONFIDENCE);
+			}
+		}
+
+		skeletonProcessor = new SkeletonProcessor();
+		tracker = new UserTracker(session);
+		canvas = new BufferedImage(640, 480, BufferedImage.TYPE_3BYTE_BGR);
+		graphics = canvas.getGraphics();
+	}
+
+	@TearDown
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public Frame getJoints() {
+		for (int u = 0; u < users; ++u) {
+			Frame.User user = frame.users.get(u);
+			float[] joints = fetched[u];
+			for (int j = 0; j < Frame.JOINTS.length; ++j) {
+				SkeletonJoint joint = Frame.JOINTS[j];
+				if (joints[4 * j + 2] != 0) {
+					Skeleton.set(user.joints, joint, joints[4 * j], joints[4 * j + 1], joints[4 * j + 2],
+							joints[4 * j], joints[4 * j + 1], joints[4 * j + 2], joints[4 * j + 3]);
+				} else {
+					Skeleton.clear(user.joints, joint);
+				}
+			}
+		}
+		return frame;
+	}
+
+	@Benchmark
+	public Frame boneVectors() {
+		skeletonProcessor.process(frame);
+		return frame;
+	}
+
+	@Benchmark
+	public BufferedImage drawSkeleton() {
+		for (int u = 0; u < users; ++u) {
+			tracker.drawSkeleton(graphics, frame.users.get(u));
+		}
+		return canvas;
+	}
+
+}
@@ -0,0 +1,50 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.TimeUnit;
+
+import org.OpenNI.Point3D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Bone vector normalization as done for every bone of every tracked user:
+ * the allocating {@link Vector3D#getNormalizedVector()}, the in-place
+ * operations on a reused vector and a whole skeleton packed in a float array.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VectorBenchmark {
+
+	private final Point3D shoulder = new Point3D(280, 150, 2000);
+	private final Point3D elbow = new Point3D(260, 200, 1980);
+	private final Vector3D reused = new Vector3D();
+	private final float[] skeleton = new float[SkeletonProcessor.BONES.length * 3];
+
+	@Benchmark
+	public Vector3D getNormalizedVector() {
+		Vector3D vector = new Vector3D(shoulder, elbow).getNormalizedVector();
+		vector.multiply(50f);
+		return vector;
+	}
+
+	@Benchmark
+	public Vector3D normalizeInPlace() {
+		return reused.set(shoulder, elbow).normalize().scale(50f);
+	}
+
+	@Benchmark
+	public float[] normalizeSkeleton() {
+		for (int b = 0; b < SkeletonProcessor.BONES.length; ++b) {
+			Vector3D.set(skeleton, b, shoulder, elbow);
+			Vector3D.normalize(skeleton, b);
+			Vector3D.scale(skeleton, b, 50f);
+		}
+		return skeleton;
+	}
+
+}
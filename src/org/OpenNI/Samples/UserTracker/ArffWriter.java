@@ -0,0 +1,157 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends labelled bone-vector samples to an ARFF file. The file is opened
+ * once, gets the header copied in only if it is new, and is written by a
+ * background thread through a buffer that is flushed every
+ * {@code flushIntervalMillis} and on {@link #close()}. {@link #record} only
+ * copies the sample into a pooled row, so it can be called from the render
+ * thread at the frame rate; when the writer falls behind, samples are dropped
+ * and counted.
+ */
+public class ArffWriter implements Closeable {
+
+	public static final int ROW_LENGTH = SkeletonProcessor.BONES.length * 3;
+
+	private static class Row {
+		final float[] values = new float[ROW_LENGTH];
+		String label;
+	}
+
+	private final ArrayBlockingQueue<Row> pending;
+	private final ArrayBlockingQueue<Row> free;
+	private final Writer out;
+	private final long flushIntervalMillis;
+	private final Thread thread;
+	private final StringBuilder line = new StringBuilder(1024);
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile boolean closed;
+
+	public ArffWriter(File output, File header) throws IOException {
+		this(output, header, 256, 1000);
+	}
+
+	public ArffWriter(File output, File header, int capacity, long flushIntervalMillis) throws IOException {
+		this.flushIntervalMillis = flushIntervalMillis;
+		pending = new ArrayBlockingQueue<Row>(capacity);
+		free = new ArrayBlockingQueue<Row>(capacity);
+		for (int i = 0; i < capacity; ++i) {
+			free.offer(new Row());
+		}
+
+		boolean fresh = !output.exists() || output.length() == 0;
+		FileOutputStream stream = new FileOutputStream(output, true);
+		try {
+			if (fresh) {
+				stream.write(Files.readAllBytes(header.toPath()));
+			}
+		} catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+		out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.US_ASCII), 64 * 1024);
+
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeRows();
+			}
+		}, "arff-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues one sample of {@link #ROW_LENGTH} values with its class label.
+	 * Returns false if the sample was dropped.
+	 */
+	public boolean record(float[] values, String label) {
+		Row row = closed ? null : free.poll();
+		if (row == null) {
+			dropped.incrementAndGet();
+			return false;
+		}
+		System.arraycopy(values, 0, row.values, 0, ROW_LENGTH);
+		row.label = label;
+		pending.offer(row);
+		return true;
+	}
+
+	public long getWritten() {
+		return written.get();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	private void writeRows() {
+		long lastFlush = System.currentTimeMillis();
+		try {
+			while (!closed || !pending.isEmpty()) {
+				long wait = Math.max(1, lastFlush + flushIntervalMillis - System.currentTimeMillis());
+				Row row;
+				try {
+					row = pending.poll(wait, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					row = pending.poll();
+				}
+				if (row != null) {
+					write(row);
+				}
+				if (System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+					out.flush();
+					lastFlush = System.currentTimeMillis();
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void write(Row row) throws IOException {
+		line.setLength(0);
+		for (int i = 0; i < ROW_LENGTH; ++i) {
+			line.append(row.values[i]).append(',');
+		}
+		line.append(row.label).append('\n');
+		free.offer(row);
+		out.append(line);
+		written.incrementAndGet();
+	}
+
+	/**
+	 * Writes out every queued sample and closes the file. Safe to call more
+	 * than once.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		thread.interrupt();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		out.close();
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Index of skeleton calibrations kept in the sensor's calibration slots,
+ * keyed by the height and width of the user's silhouette in millimetres. A
+ * user whose silhouette matches an entry within the tolerance is taken to be
+ * the one who was calibrated before. When all slots are used the least
+ * recently used entry is replaced.
+ */
+public class CalibrationCache {
+
+	private final float[] height;
+	private final float[] width;
+	private final long[] lastUsed;
+	private final boolean[] used;
+	private volatile float heightTolerance = 60;
+	private volatile float widthTolerance = 80;
+	private long clock;
+
+	public CalibrationCache(int slots) {
+		height = new float[slots];
+		width = new float[slots];
+		lastUsed = new long[slots];
+		used = new boolean[slots];
+	}
+
+	public int getSlots() {
+		return used.length;
+	}
+
+	/** Largest differences in height and width, in mm, still taken as the same person. */
+	public void setTolerance(float heightMillimetres, float widthMillimetres) {
+		heightTolerance = heightMillimetres;
+		widthTolerance = widthMillimetres;
+	}
+
+	public synchronized int size() {
+		int size = 0;
+		for (boolean u : used) {
+			if (u) {
+				size++;
+			}
+		}
+		return size;
+	}
+
+	/** Slot of the closest entry within the tolerance, or -1. */
+	public synchronized int find(float userHeight, float userWidth) {
+		float ht = heightTolerance;
+		float wt = widthTolerance;
+		int best = -1;
+		float bestDistance = 1;
+		for (int i = 0; i < used.length; ++i) {
+			if (!used[i]) {
+				continue;
+			}
+			float dh = (height[i] - userHeight) / ht;
+			float dw = (width[i] - userWidth) / wt;
+			// inside the tolerance ellipse
+			float distance = dh * dh + dw * dw;
+			if (distance <= bestDistance) {
+				bestDistance = distance;
+				best = i;
+			}
+		}
+		if (best >= 0) {
+			lastUsed[best] = ++clock;
+		}
+		return best;
+	}
+
+	/**
+	 * Slot to save a calibration of a user of this size in: the entry of the
+	 * same person if there is one, else a free or the least recently used slot.
+	 */
+	public synchronized int store(float userHeight, float userWidth) {
+		int slot = find(userHeight, userWidth);
+		if (slot < 0) {
+			slot = 0;
+			for (int i = 0; i < used.length; ++i) {
+				if (!used[i]) {
+					slot = i;
+					break;
+				}
+				if (lastUsed[i] < lastUsed[slot]) {
+					slot = i;
+				}
+			}
+		}
+		used[slot] = true;
+		height[slot] = userHeight;
+		width[slot] = userWidth;
+		lastUsed[slot] = ++clock;
+		return slot;
+	}
+
+	public synchronized void remove(int slot) {
+		used[slot] = false;
+	}
+
+}
@@ -0,0 +1,400 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.ArrayList;
+
+import org.OpenNI.PoseDetectionCapability;
+import org.OpenNI.SkeletonCapability;
+import org.OpenNI.SkeletonJoint;
+import org.OpenNI.StatusException;
+
+/**
+ * Per-user calibration state machine of an {@link OpenNIFrameSource}.
+ * <p>
+ * A new user is first measured: height and width of the silhouette, once it
+ * no longer touches the image border. If the {@link CalibrationCache} holds a
+ * calibration of someone that size it is loaded and tracking starts at once;
+ * otherwise, or if tracking does not start from the loaded calibration, the
+ * user goes through pose detection and calibration as before. A calibration
+ * that fails is retried after a delay that doubles with every failure, up to
+ * {@link #MAX_BACKOFF_MILLIS}. Once tracked with the arms down, the user's
+ * calibration is saved to the cache for the next visit; a user not measured
+ * within {@link #SAVE_FRAMES} frames of tracking is not saved.
+ * <p>
+ * Silhouettes are measured from the bounding boxes of {@link UserRegions},
+ * which are only updated on frames where some user is measured, and then
+ * searched for around their last position rather than in the whole label map.
+ * <p>
+ * The OpenNI callbacks and {@link #update(Frame, long)} all run on the thread
+ * that reads frames; the statistics can be read from any thread.
+ */
+public class Calibrator {
+
+	public enum Phase {
+		/** Waiting for a complete silhouette to look up the cache. */
+		MEASURING,
+		/** Cached calibration loaded, waiting for tracking to start. */
+		LOADED,
+		POSE,
+		CALIBRATING,
+		/** Waiting to retry after a failed calibration. */
+		BACKOFF,
+		TRACKING
+	}
+
+	/** Frames to wait for a complete silhouette before calibrating from scratch. */
+	static final int MEASURE_FRAMES = 15;
+	/** Frames to wait for tracking to start from a cached calibration. */
+	static final int LOAD_FRAMES = 30;
+	/** Frames to wait for a complete silhouette with the arms down before giving up on saving. */
+	static final int SAVE_FRAMES = 150;
+	static final long BASE_BACKOFF_MILLIS = 500;
+	static final long MAX_BACKOFF_MILLIS = 8000;
+
+	private static final int NECK = Skeleton.offset(SkeletonJoint.NECK);
+	private static final int LEFT_HAND = Skeleton.offset(SkeletonJoint.LEFT_HAND);
+	private static final int RIGHT_HAND = Skeleton.offset(SkeletonJoint.RIGHT_HAND);
+
+	private static class UserCalibration {
+		int userId;
+		Phase phase;
+		/** Time the user appeared or the current attempt began, nanoTime. */
+		long since;
+		long retryAt;
+		int frames;
+		int failures;
+		boolean cached;
+		boolean saved;
+	}
+
+	private final SkeletonCapability skeletonCap;
+	private final PoseDetectionCapability poseDetectionCap;
+	private final String calibPose;
+	private final Projection projection;
+	private final CalibrationCache cache;
+	private final EventLog log = EventLog.getDefault();
+
+	private final ArrayList<UserCalibration> users = new ArrayList<UserCalibration>();
+	private final ArrayList<UserCalibration> pool = new ArrayList<UserCalibration>();
+	private final IntSlotMap slots = new IntSlotMap(16);
+	private final float[] measure = new float[2];
+	private final UserRegions regions = new UserRegions();
+	private boolean regionsUpdated;
+
+	private final LatencyHistogram timeToTracking = new LatencyHistogram();
+	private final LatencyHistogram timeToTrackingCached = new LatencyHistogram();
+	private volatile long calibrations, failures, cacheHits, cacheMisses, cacheRejected, saved;
+
+	public Calibrator(SkeletonCapability skeletonCap, PoseDetectionCapability poseDetectionCap, String calibPose,
+			Projection projection, CalibrationCache cache) {
+		this.skeletonCap = skeletonCap;
+		this.poseDetectionCap = poseDetectionCap;
+		this.calibPose = calibPose;
+		this.projection = projection;
+		this.cache = cache;
+	}
+
+	public CalibrationCache getCache() {
+		return cache;
+	}
+
+	/** Time from a user appearing to tracking, after a full calibration. */
+	public LatencyHistogram getTimeToTracking() {
+		return timeToTracking;
+	}
+
+	/** Time from a user appearing to tracking, from a cached calibration. */
+	public LatencyHistogram getTimeToTrackingCached() {
+		return timeToTrackingCached;
+	}
+
+	public long getCalibrations() {
+		return calibrations;
+	}
+
+	public long getFailures() {
+		return failures;
+	}
+
+	public long getCacheHits() {
+		return cacheHits;
+	}
+
+	public long getCacheMisses() {
+		return cacheMisses;
+	}
+
+	/** Cached calibrations loaded that did not lead to tracking. */
+	public long getCacheRejected() {
+		return cacheRejected;
+	}
+
+	public long getSaved() {
+		return saved;
+	}
+
+	/** Phase of a user, or null if unknown. */
+	public Phase getPhase(int userId) {
+		int slot = slots.get(userId);
+		return slot < 0 ? null : users.get(slot).phase;
+	}
+
+	void newUser(int userId) {
+		log.log(EventLog.Type.NEW_USER, userId, null);
+		UserCalibration user = pool.isEmpty() ? new UserCalibration() : pool.remove(pool.size() - 1);
+		user.userId = userId;
+		user.since = System.nanoTime();
+		user.frames = 0;
+		user.failures = 0;
+		user.cached = false;
+		user.saved = false;
+		slots.put(userId, users.size());
+		users.add(user);
+		if (cache.size() > 0) {
+			user.phase = Phase.MEASURING;
+		} else {
+			startCalibration(user);
+		}
+	}
+
+	void lostUser(int userId) {
+		log.log(EventLog.Type.LOST_USER, userId, null);
+		int slot = slots.remove(userId);
+		if (slot < 0) {
+			return;
+		}
+		UserCalibration user = users.get(slot);
+		UserCalibration last = users.remove(users.size() - 1);
+		if (last != user) {
+			users.set(slot, last);
+			slots.put(last.userId, slot);
+		}
+		pool.add(user);
+	}
+
+	void poseDetected(int userId, String pose) {
+		log.log(EventLog.Type.POSE_DETECTED, userId, pose);
+		try {
+			poseDetectionCap.stopPoseDetection(userId);
+			skeletonCap.requestSkeletonCalibration(userId, true);
+		} catch (StatusException e) {
+			e.printStackTrace();
+		}
+		UserCalibration user = get(userId);
+		if (user != null) {
+			user.phase = Phase.CALIBRATING;
+		}
+	}
+
+	void calibrationComplete(int userId, boolean ok, boolean aborted, String status) {
+		log.log(EventLog.Type.CALIBRATION, userId, status);
+		UserCalibration user = get(userId);
+		if (user == null) {
+			return;
+		}
+		if (ok) {
+			calibrations++;
+			try {
+				skeletonCap.startTracking(userId);
+			} catch (StatusException e) {
+				e.printStackTrace();
+			}
+			tracking(user, false);
+		} else if (!aborted) {
+			failures++;
+			user.failures++;
+			long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(user.failures - 1, 16));
+			user.retryAt = System.nanoTime() + delay * 1000000L;
+			user.phase = Phase.BACKOFF;
+		}
+	}
+
+	/** Advances every user that waits on a frame or on time. */
+	void update(Frame frame, long now) {
+		regionsUpdated = false;
+		for (int i = 0; i < users.size(); ++i) {
+			UserCalibration user = users.get(i);
+			switch (user.phase) {
+			case MEASURING:
+				measuring(frame, user);
+				break;
+			case LOADED:
+				if (skeletonCap.isSkeletonTracking(user.userId)) {
+					tracking(user, true);
+				} else if (++user.frames > LOAD_FRAMES) {
+					cacheRejected++;
+					startCalibration(user);
+				}
+				break;
+			case BACKOFF:
+				if (now - user.retryAt >= 0) {
+					startCalibration(user);
+				}
+				break;
+			case TRACKING:
+				if (!user.saved) {
+					save(frame, user);
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	private void measuring(Frame frame, UserCalibration user) {
+		Frame.User frameUser = frame.getUser(user.userId);
+		if (frameUser != null && measure(frame, frameUser)) {
+			int slot = cache.find(measure[0], measure[1]);
+			if (slot >= 0) {
+				try {
+					skeletonCap.loadSkeletonCalibrationData(user.userId, slot);
+					skeletonCap.startTracking(user.userId);
+					cacheHits++;
+					user.phase = Phase.LOADED;
+					user.frames = 0;
+					return;
+				} catch (StatusException e) {
+					e.printStackTrace();
+				}
+			}
+			cacheMisses++;
+			startCalibration(user);
+		} else if (++user.frames > MEASURE_FRAMES) {
+			cacheMisses++;
+			startCalibration(user);
+		}
+	}
+
+	private void startCalibration(UserCalibration user) {
+		try {
+			if (skeletonCap.needPoseForCalibration()) {
+				poseDetectionCap.startPoseDetection(calibPose, user.userId);
+				user.phase = Phase.POSE;
+			} else {
+				skeletonCap.requestSkeletonCalibration(user.userId, true);
+				user.phase = Phase.CALIBRATING;
+			}
+		} catch (StatusException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void tracking(UserCalibration user, boolean cached) {
+		long elapsed = System.nanoTime() - user.since;
+		(cached ? timeToTrackingCached : timeToTracking).record(elapsed);
+		user.phase = Phase.TRACKING;
+		user.cached = cached;
+		// a cached calibration is already in the cache
+		user.saved = cached;
+		user.failures = 0;
+		user.frames = 0;
+		log.log(EventLog.Type.TRACKING, user.userId, cached ? "cache" : "calibration", elapsed / 1e9f);
+	}
+
+	private void save(Frame frame, UserCalibration user) {
+		if (++user.frames > SAVE_FRAMES) {
+			log.log(EventLog.Type.MESSAGE, user.userId, "calibration not saved, no complete silhouette");
+			user.saved = true;
+			return;
+		}
+		Frame.User frameUser = frame.getUser(user.userId);
+		if (frameUser == null || !frameUser.hasJoints || !armsDown(frameUser.joints) || !measure(frame, frameUser)) {
+			return;
+		}
+		int slot = cache.store(measure[0], measure[1]);
+		try {
+			skeletonCap.saveSkeletonCalibrationData(user.userId, slot);
+			saved++;
+		} catch (StatusException e) {
+			cache.remove(slot);
+			e.printStackTrace();
+		}
+		user.saved = true;
+	}
+
+	/** Whether both hands are below the neck, or the joints are not known. */
+	private static boolean armsDown(float[] joints) {
+		if (joints[NECK + Skeleton.CONFIDENCE] == 0) {
+			return true;
+		}
+		float neck = joints[NECK + Skeleton.Y];
+		return (joints[LEFT_HAND + Skeleton.CONFIDENCE] == 0 || joints[LEFT_HAND + Skeleton.Y] < neck)
+				&& (joints[RIGHT_HAND + Skeleton.CONFIDENCE] == 0 || joints[RIGHT_HAND + Skeleton.Y] < neck);
+	}
+
+	/**
+	 * Measures {@code user} into {@link #measure}, updating the boxes of the
+	 * frame's users first; a user without a box has no pixels.
+	 */
+	private boolean measure(Frame frame, Frame.User user) {
+		if (!regionsUpdated) {
+			regions.update(frame);
+			regionsUpdated = true;
+		}
+		return user.maxX >= 0 && measure(frame, user, projection, measure);
+	}
+
+	/**
+	 * Height and width in mm of the user's silhouette in the label map, at the
+	 * depth of the centre of mass. Uses the user's bounding box if known and
+	 * scans the label map otherwise. Returns false if the silhouette touches
+	 * the image border or the user has no depth.
+	 */
+	static boolean measure(Frame frame, Frame.User user, Projection projection, float[] out) {
+		float z = user.comZ;
+		if (z <= 0) {
+			return false;
+		}
+		if (user.maxX >= 0) {
+			return size(frame, user.minY, user.maxY, user.minX, user.maxX, z, projection, out);
+		}
+		short id = (short) user.id;
+		short[] scene = frame.scene;
+		int width = frame.width;
+		int top = -1, bottom = -1, left = width, right = -1;
+		for (int y = 0, pos = 0; y < frame.height; ++y) {
+			int first = -1, last = -1;
+			for (int x = 0; x < width; ++x, ++pos) {
+				if (scene[pos] == id) {
+					if (first < 0) {
+						first = x;
+					}
+					last = x;
+				}
+			}
+			if (first >= 0) {
+				if (top < 0) {
+					top = y;
+				}
+				bottom = y;
+				left = Math.min(left, first);
+				right = Math.max(right, last);
+			}
+		}
+		return size(frame, top, bottom, left, right, z, projection, out);
+	}
+
+	private static boolean size(Frame frame, int top, int bottom, int left, int right, float z, Projection projection,
+			float[] out) {
+		if (top <= 0 || bottom >= frame.height - 1 || left <= 0 || right >= frame.width - 1) {
+			return false;
+		}
+		out[0] = projection.realY(top, z) - projection.realY(bottom + 1, z);
+		out[1] = projection.realX(right + 1, z) - projection.realX(left, z);
+		return true;
+	}
+
+	private UserCalibration get(int userId) {
+		int slot = slots.get(userId);
+		return slot < 0 ? null : users.get(slot);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("calibrations=%d failures=%d cache hits=%d misses=%d rejected=%d saved=%d"
+				+ " time to tracking p50=%.2fs cached p50=%.2fs", calibrations, failures, cacheHits, cacheMisses,
+				cacheRejected, saved, timeToTracking.getValueAtPercentile(50) / 1e9,
+				timeToTrackingCached.getValueAtPercentile(50) / 1e9);
+	}
+
+}
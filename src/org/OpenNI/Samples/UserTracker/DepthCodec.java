@@ -0,0 +1,142 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Compression of depth and label maps for {@link DepthRecorder}.
+ * <p>
+ * A depth map is stored as the difference to the previous one (or to an empty
+ * map for key frames), as alternating runs: the number of unchanged pixels,
+ * the number of changed pixels, then each change zigzag encoded. A label map
+ * is stored as runs of equal labels, length then label. All numbers are
+ * unsigned LEB128 varints, so the unchanged background and the zero label
+ * around users cost a few bytes per run.
+ */
+final class DepthCodec {
+
+	static final int MAGIC = 0x31545044; // "DPT1"
+	static final int VERSION = 1;
+	static final int KEY_FRAME = 1;
+
+	private DepthCodec() {
+	}
+
+	/** Growable output buffer. */
+	static final class Bytes {
+		byte[] data;
+		int length;
+
+		Bytes(int capacity) {
+			data = new byte[capacity];
+		}
+
+		void clear() {
+			length = 0;
+		}
+
+		void varint(int value) {
+			if (data.length - length < 5) {
+				data = Arrays.copyOf(data, 2 * data.length + 5);
+			}
+			while ((value & ~0x7F) != 0) {
+				data[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			data[length++] = (byte) value;
+		}
+	}
+
+	/** Input position over an encoded buffer. */
+	static final class Reader {
+		byte[] data;
+		int pos;
+		int limit;
+
+		int varint() throws IOException {
+			int value = 0;
+			for (int shift = 0; shift < 35; shift += 7) {
+				if (pos >= limit) {
+					throw new IOException("truncated depth frame");
+				}
+				byte b = data[pos++];
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					return value;
+				}
+			}
+			throw new IOException("malformed varint");
+		}
+	}
+
+	static void encodeDelta(short[] current, short[] previous, Bytes out) {
+		int n = current.length;
+		int i = 0;
+		while (i < n) {
+			int start = i;
+			while (i < n && current[i] == previous[i]) {
+				i++;
+			}
+			out.varint(i - start);
+			start = i;
+			while (i < n && current[i] != previous[i]) {
+				i++;
+			}
+			out.varint(i - start);
+			for (int k = start; k < i; ++k) {
+				int delta = (short) (current[k] - previous[k]);
+				out.varint((delta << 1) ^ (delta >> 31));
+			}
+		}
+	}
+
+	/** Applies an encoded difference to {@code depth}, which holds the previous map. */
+	static void decodeDelta(Reader in, short[] depth) throws IOException {
+		int n = depth.length;
+		int i = 0;
+		while (i < n) {
+			int unchanged = in.varint();
+			if (unchanged < 0 || unchanged > n - i) {
+				throw new IOException("depth run past end of frame");
+			}
+			i += unchanged;
+			int changed = in.varint();
+			if (changed < 0 || changed > n - i) {
+				throw new IOException("depth run past end of frame");
+			}
+			for (int end = i + changed; i < end; ++i) {
+				int zigzag = in.varint();
+				depth[i] += (short) ((zigzag >>> 1) ^ -(zigzag & 1));
+			}
+		}
+	}
+
+	static void encodeRuns(short[] labels, Bytes out) {
+		int n = labels.length;
+		int i = 0;
+		while (i < n) {
+			short label = labels[i];
+			int start = i;
+			while (i < n && labels[i] == label) {
+				i++;
+			}
+			out.varint(i - start);
+			out.varint(label & 0xFFFF);
+		}
+	}
+
+	static void decodeRuns(Reader in, short[] labels) throws IOException {
+		int n = labels.length;
+		int i = 0;
+		while (i < n) {
+			int run = in.varint();
+			short label = (short) in.varint();
+			if (run < 0 || run > n - i) {
+				throw new IOException("label run past end of frame");
+			}
+			Arrays.fill(labels, i, i + run, label);
+			i += run;
+		}
+	}
+
+}
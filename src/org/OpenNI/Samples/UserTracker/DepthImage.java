@@ -0,0 +1,50 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.awt.Graphics;
+import java.awt.color.ColorSpace;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+/**
+ * RGB image of the colorized depth map, allocated once per resolution. Each
+ * frame is copied straight into the image's backing raster.
+ */
+public class DepthImage {
+
+	private BufferedImage image;
+	private byte[] pixels;
+	private int width, height;
+
+	public void update(Frame frame) {
+		if (image == null || frame.width != width || frame.height != height) {
+			allocate(frame.width, frame.height);
+		}
+		System.arraycopy(frame.image, 0, pixels, 0, pixels.length);
+	}
+
+	private void allocate(int width, int height) {
+		this.width = width;
+		this.height = height;
+
+		DataBufferByte dataBuffer = new DataBufferByte(width * height * 3);
+
+		WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, width, height, width * 3, 3, new int[]{0, 1, 2}, null);
+
+		ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[]{8, 8, 8}, false, false, ComponentColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
+
+		image = new BufferedImage(colorModel, raster, false, null);
+		pixels = dataBuffer.getData();
+	}
+
+	public void draw(Graphics g) {
+		if (image != null) {
+			g.drawImage(image, 0, 0, null);
+		}
+	}
+
+}
@@ -0,0 +1,390 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Builds the cumulative depth histogram and colorizes the depth map by user
+ * into {@link Frame#image}. Colors are looked up per (user color, depth) in a
+ * table rebuilt from the histogram each frame, so the pixel loop does one
+ * lookup and three stores per pixel and allocates nothing.
+ * <p>
+ * Frames with at least {@code parallelThreshold} pixels are split into row
+ * stripes on a fork/join pool: every stripe counts depths into its own integer
+ * histogram, the stripe histograms are merged, and the stripes are then
+ * colorized concurrently. Smaller frames are processed on the calling thread.
+ * <p>
+ * In region of interest mode only the pixels within {@code roiMargin} of a
+ * user's bounding box are colorized, the rest of the image stays black. The
+ * histogram is still counted over the whole frame, so the colorized pixels
+ * look the same as in full mode. The boxes are tracked by {@link UserRegions} and stored in the frame's
+ * users. Frames of headless sessions are not colorized, so the mode saves
+ * nothing there.
+ */
+public class DepthProcessor implements FrameStage
+{
+    static final int MAX_DEPTH = 10000;
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 320 * 240;
+    public static final int DEFAULT_ROI_MARGIN = 16;
+
+    /** Packed RGB of the user colors; the last entry is used for the background. */
+    static final int colors[] = {0xFF0000, 0x0000FF, 0x00FFFF, 0x00FF00, 0xFF00FF, 0xFFAFAF, 0xFFFF00, 0xFFFFFF};
+
+    /** Spans [firstSpan, lastSpan) of one frame, reused from frame to frame. */
+    private class Stripe extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        final int[] counts = new int[MAX_DEPTH];
+        int firstSpan, lastSpan;
+        int points, max;
+        boolean colorize;
+
+        @Override
+        protected void compute()
+        {
+            if (colorize)
+            {
+                for (int s = firstSpan; s < lastSpan; ++s)
+                    colorize(spanStarts[s], spanEnds[s]);
+            }
+            else
+                count(this);
+        }
+    }
+
+    private class Stripes extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute()
+        {
+            invokeAll(stripes);
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+    private final Stripe[] stripes;
+    private final Stripes allStripes = new Stripes();
+
+    private float histogram[] = new float[MAX_DEPTH];
+    private int colorTable[] = new int[colors.length * MAX_DEPTH];
+    private int maxDepth;
+
+    private short[] depth;
+    private short[] scene;
+    private byte[] imgbytes;
+    private int pixels;
+    private int stripeCount;
+
+    // pixels to process as spans of positions [spanStarts[i], spanEnds[i])
+    private int[] spanStarts;
+    private int[] spanEnds;
+    private int spanCount;
+
+    private final UserRegions regions = new UserRegions();
+    private volatile boolean regionOfInterest;
+    private volatile int roiMargin = DEFAULT_ROI_MARGIN;
+
+    public DepthProcessor()
+    {
+        this(ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    public DepthProcessor(ForkJoinPool pool, int parallelThreshold)
+    {
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+        this.stripes = new Stripe[Math.max(1, pool.getParallelism())];
+        for (int i = 0; i < stripes.length; ++i)
+            stripes[i] = new Stripe();
+        this.spanStarts = new int[Math.max(64, stripes.length)];
+        this.spanEnds = new int[spanStarts.length];
+    }
+
+    private void count(Stripe stripe)
+    {
+        short[] depth = this.depth;
+        int[] counts = stripe.counts;
+        for (int i = 0; i <= stripe.max; ++i)
+            counts[i] = 0;
+
+        int points = 0;
+        int max = 0;
+        for (int s = stripe.firstSpan; s < stripe.lastSpan; ++s)
+        {
+            for (int pos = spanStarts[s], end = spanEnds[s]; pos < end; ++pos)
+            {
+                short depthVal = depth[pos];
+                if (depthVal != 0)
+                {
+                    counts[depthVal]++;
+                    points++;
+                    if (depthVal > max)
+                        max = depthVal;
+                }
+            }
+        }
+        stripe.points = points;
+        stripe.max = max;
+    }
+
+    private void mergeHist(int stripeCount)
+    {
+        int points = 0;
+        int max = 0;
+        for (int s = 0; s < stripeCount; ++s)
+        {
+            points += stripes[s].points;
+            max = Math.max(max, stripes[s].max);
+        }
+        maxDepth = max;
+
+        histogram[0] = 0;
+        float cumulative = 0;
+        for (int i = 1; i < histogram.length; i++)
+        {
+            if (i <= max)
+            {
+                for (int s = 0; s < stripeCount; ++s)
+                {
+                    if (i <= stripes[s].max)
+                        cumulative += stripes[s].counts[i];
+                }
+            }
+            histogram[i] = cumulative;
+        }
+
+        if (points > 0)
+        {
+            for (int i = 1; i < histogram.length; i++)
+            {
+                histogram[i] = 1.0f - (histogram[i] / (float)points);
+            }
+        }
+    }
+
+    private void calcColorTable()
+    {
+        for (int c = 0; c < colors.length; ++c)
+        {
+            int red = (colors[c] >> 16) & 0xFF;
+            int green = (colors[c] >> 8) & 0xFF;
+            int blue = colors[c] & 0xFF;
+            int offset = c * MAX_DEPTH;
+            for (int d = 1; d <= maxDepth; ++d)
+            {
+                float histValue = histogram[d];
+                colorTable[offset + d] = (((int)(histValue*red) & 0xFF) << 16)
+                        | (((int)(histValue*green) & 0xFF) << 8)
+                        | ((int)(histValue*blue) & 0xFF);
+            }
+        }
+    }
+
+    private void colorize(int start, int end)
+    {
+        short[] depth = this.depth;
+        short[] scene = this.scene;
+        byte[] imgbytes = this.imgbytes;
+        int[] colorTable = this.colorTable;
+        for (int pos = start; pos < end; ++pos)
+        {
+            short pixel = depth[pos];
+            short user = scene[pos];
+
+            int rgb = 0;
+            if (pixel != 0)
+            {
+            	int colorID = user % (colors.length-1);
+            	if (user == 0)
+            	{
+            		colorID = colors.length-1;
+            	}
+            	rgb = colorTable[colorID * MAX_DEPTH + pixel];
+            }
+            imgbytes[3*pos] = (byte)(rgb >> 16);
+            imgbytes[3*pos+1] = (byte)(rgb >> 8);
+            imgbytes[3*pos+2] = (byte)rgb;
+        }
+    }
+
+    private void runStripes(boolean colorize)
+    {
+        for (Stripe stripe : stripes)
+        {
+            stripe.colorize = colorize;
+            stripe.reinitialize();
+        }
+        allStripes.reinitialize();
+        pool.invoke(allStripes);
+    }
+
+    void calcHist(Frame frame)
+    {
+        calcHist(frame, regionOfInterest);
+    }
+
+    /**
+     * Counts the depths of {@code frame} and rebuilds the histogram and color
+     * table from them, then prepares colorizing only around the users' boxes
+     * if {@code roi} is set.
+     */
+    void calcHist(Frame frame, boolean roi)
+    {
+        depth = frame.depth;
+        scene = frame.scene;
+        imgbytes = frame.image;
+        pixels = frame.width * frame.height;
+
+        boolean parallel = pixels >= parallelThreshold && stripes.length > 1;
+        stripeCount = parallel ? stripes.length : 1;
+        // one span of whole rows per stripe
+        spanCount = stripeCount;
+        for (int s = 0; s < stripeCount; ++s)
+        {
+            spanStarts[s] = frame.height * s / stripeCount * frame.width;
+            spanEnds[s] = frame.height * (s + 1) / stripeCount * frame.width;
+            stripes[s].firstSpan = s;
+            stripes[s].lastSpan = s + 1;
+        }
+
+        if (stripeCount > 1)
+            runStripes(false);
+        else
+            count(stripes[0]);
+        mergeHist(stripeCount);
+        calcColorTable();
+
+        if (roi)
+        {
+            int covered = userSpans(frame);
+            parallel = covered >= parallelThreshold && stripes.length > 1;
+            stripeCount = parallel ? stripes.length : 1;
+            splitSpans(covered);
+        }
+    }
+
+    /**
+     * Fills the spans with the user boxes of {@code frame} grown by the margin
+     * and returns the number of pixels they cover.
+     */
+    private int userSpans(Frame frame)
+    {
+        int count;
+        while ((count = regions.spans(frame, roiMargin, spanStarts, spanEnds)) < 0)
+        {
+            spanStarts = new int[2 * spanStarts.length];
+            spanEnds = new int[2 * spanEnds.length];
+        }
+        spanCount = count;
+        int covered = 0;
+        for (int s = 0; s < count; ++s)
+            covered += spanEnds[s] - spanStarts[s];
+        return covered;
+    }
+
+    /** Hands every stripe consecutive spans of about the same number of pixels. */
+    private void splitSpans(int covered)
+    {
+        int span = 0;
+        long done = 0;
+        for (int s = 0; s < stripeCount; ++s)
+        {
+            stripes[s].firstSpan = span;
+            long target = (long) covered * (s + 1) / stripeCount;
+            while (span < spanCount && (done < target || s == stripeCount - 1))
+            {
+                done += spanEnds[span] - spanStarts[span];
+                span++;
+            }
+            stripes[s].lastSpan = span;
+        }
+    }
+
+    /**
+     * Colorizes the frame last passed to {@link #calcHist(Frame, boolean)}.
+     */
+    void colorize()
+    {
+        if (stripeCount > 1)
+            runStripes(true);
+        else
+        {
+            for (int s = 0; s < spanCount; ++s)
+                colorize(spanStarts[s], spanEnds[s]);
+        }
+    }
+
+    /**
+     * Blackens what was colorized in the image of {@code frame} the last time
+     * and remembers the spans colorized this time.
+     */
+    private void trackPainted(Frame frame)
+    {
+        if (frame.paintedCount < 0)
+            Arrays.fill(frame.image, (byte)0);
+        else
+        {
+            for (int s = 0; s < frame.paintedCount; ++s)
+                Arrays.fill(frame.image, 3 * frame.paintedStarts[s], 3 * frame.paintedEnds[s], (byte)0);
+        }
+        if (frame.paintedStarts.length < spanCount)
+        {
+            frame.paintedStarts = new int[spanStarts.length];
+            frame.paintedEnds = new int[spanEnds.length];
+        }
+        System.arraycopy(spanStarts, 0, frame.paintedStarts, 0, spanCount);
+        System.arraycopy(spanEnds, 0, frame.paintedEnds, 0, spanCount);
+        frame.paintedCount = spanCount;
+    }
+
+    /**
+     * Restricts the work to the users' surroundings, see the class comment.
+     */
+    public void setRegionOfInterest(boolean regionOfInterest)
+    {
+        this.regionOfInterest = regionOfInterest;
+    }
+
+    public boolean isRegionOfInterest()
+    {
+        return regionOfInterest;
+    }
+
+    /** Pixels around a user's bounding box still processed in region of interest mode. */
+    public void setRoiMargin(int pixels)
+    {
+        roiMargin = pixels;
+    }
+
+    /**
+     * Colorizes {@code frame}; frames without an image, from headless
+     * sessions, are left alone.
+     */
+    @Override
+    public void process(Frame frame)
+    {
+        if (frame.image == null)
+            return;
+        // one read per frame, the setting may change from another thread
+        boolean roi = regionOfInterest;
+        PipelineMetrics metrics = frame.metrics;
+        long start = metrics == null ? 0 : metrics.now();
+        if (roi)
+            regions.update(frame);
+        calcHist(frame, roi);
+        if (metrics != null)
+            start = metrics.record(PipelineMetrics.HISTOGRAM, start);
+        if (roi)
+            trackPainted(frame);
+        else
+            frame.paintedCount = -1;
+        colorize();
+        if (metrics != null)
+            metrics.record(PipelineMetrics.COLORIZE, start);
+    }
+}
@@ -0,0 +1,94 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Records the depth and label maps of every frame to a compressed stream that
+ * {@link RecordedDepthSource} plays back. The file starts with magic, version,
+ * width and height, followed per frame by flags, timestamp, the two payload
+ * lengths and the payloads encoded by {@link DepthCodec}. Every
+ * {@code keyFrameInterval}-th frame is a key frame encoded against an empty
+ * map, the others against the frame before.
+ */
+public class DepthRecorder implements FrameListener, Closeable {
+
+	private final DataOutputStream out;
+	private final int width, height;
+	private final int keyFrameInterval;
+	private final short[] previous;
+	private final DepthCodec.Bytes depthBytes;
+	private final DepthCodec.Bytes sceneBytes;
+	private long frameCount;
+	private long bytesWritten;
+
+	public DepthRecorder(File file, int width, int height) throws IOException {
+		this(file, width, height, 30);
+	}
+
+	public DepthRecorder(File file, int width, int height, int keyFrameInterval) throws IOException {
+		this.width = width;
+		this.height = height;
+		this.keyFrameInterval = Math.max(1, keyFrameInterval);
+		previous = new short[width * height];
+		depthBytes = new DepthCodec.Bytes(width * height);
+		sceneBytes = new DepthCodec.Bytes(4096);
+
+		out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 256 * 1024));
+		out.writeInt(DepthCodec.MAGIC);
+		out.writeInt(DepthCodec.VERSION);
+		out.writeInt(width);
+		out.writeInt(height);
+	}
+
+	@Override
+	public synchronized void frameReady(Frame frame) {
+		if (frame.width != width || frame.height != height) {
+			throw new IllegalArgumentException("frame is " + frame.width + "x" + frame.height
+					+ ", recording is " + width + "x" + height);
+		}
+		boolean key = frameCount % keyFrameInterval == 0;
+		if (key) {
+			Arrays.fill(previous, (short) 0);
+		}
+		depthBytes.clear();
+		sceneBytes.clear();
+		DepthCodec.encodeDelta(frame.depth, previous, depthBytes);
+		DepthCodec.encodeRuns(frame.scene, sceneBytes);
+		System.arraycopy(frame.depth, 0, previous, 0, previous.length);
+
+		try {
+			out.writeInt(key ? DepthCodec.KEY_FRAME : 0);
+			out.writeLong(frame.timestamp);
+			out.writeInt(depthBytes.length);
+			out.writeInt(sceneBytes.length);
+			out.write(depthBytes.data, 0, depthBytes.length);
+			out.write(sceneBytes.data, 0, sceneBytes.length);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return;
+		}
+		bytesWritten += 20 + depthBytes.length + sceneBytes.length;
+		frameCount++;
+	}
+
+	public synchronized long getFrameCount() {
+		return frameCount;
+	}
+
+	/** Compressed size of the frames recorded so far, without the file header. */
+	public synchronized long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		out.close();
+	}
+
+}
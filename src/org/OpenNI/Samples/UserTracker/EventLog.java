@@ -0,0 +1,290 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Structured log of user lifecycle, calibration, pose and gesture events.
+ * Callers on sensor callback, pipeline and event dispatch threads only claim
+ * a slot of a preallocated ring buffer with one compare-and-set and copy the
+ * event into it; a background thread formats the records as
+ * {@code time type user=<id> key=value} lines, quoting values with spaces,
+ * and writes them out, so a slow console or remote log never stalls tracking.
+ * <p>
+ * When the writer falls behind, events are dropped rather than waited for:
+ * samples, points and metrics once the buffer is three quarters full, all
+ * events once it is full. Drops are counted and reported in the log itself.
+ */
+public class EventLog {
+
+	public enum Type {
+		NEW_USER(true, null, null),
+		LOST_USER(true, null, null),
+		POSE_DETECTED(true, "pose", null),
+		CALIBRATION(true, "status", null),
+		TRACKING(true, "from", "seconds"),
+		GESTURE(true, "gesture", "distance"),
+		SAMPLE(false, "label", "values"),
+		POINT(false, null, "point"),
+		MESSAGE(true, "text", null),
+		/** Text already made of key=value pairs. */
+		METRICS(false, null, null);
+
+		/** Kept until the buffer is completely full. */
+		final boolean lifecycle;
+		final String textKey;
+		final String valuesKey;
+		final String label;
+
+		Type(boolean lifecycle, String textKey, String valuesKey) {
+			this.lifecycle = lifecycle;
+			this.textKey = textKey;
+			this.valuesKey = valuesKey;
+			this.label = name().toLowerCase().replace('_', '-');
+		}
+	}
+
+	/** Largest number of values kept per event; longer arrays are truncated. */
+	public static final int MAX_VALUES = 64;
+
+	private static final class Record {
+		long time;
+		Type type;
+		int user;
+		String text;
+		final float[] values = new float[MAX_VALUES];
+		int valueCount;
+	}
+
+	private static EventLog defaultLog;
+
+	private final Record[] records;
+	// slot i holds record n when sequences[i] == n + 1, and is free for record n when it is n
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final int lowPriorityLimit;
+	private final AtomicLong tail = new AtomicLong();
+	private volatile long head;
+	private final AtomicLong dropped = new AtomicLong();
+	private volatile long written;
+
+	private final Writer out;
+	private final Thread writer;
+	private volatile boolean running = true;
+	private volatile boolean sleeping;
+
+	/**
+	 * @param capacity ring buffer size, rounded up to a power of two
+	 */
+	public EventLog(Writer out, int capacity) {
+		int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+		this.records = new Record[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; ++i) {
+			records[i] = new Record();
+			sequences.set(i, i);
+		}
+		this.mask = size - 1;
+		this.lowPriorityLimit = size - size / 4;
+		this.out = out;
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				drain();
+			}
+		}, "event-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/** Log shared by the whole process, written to standard output and flushed at exit. */
+	public static synchronized EventLog getDefault() {
+		if (defaultLog == null) {
+			defaultLog = new EventLog(new BufferedWriter(new OutputStreamWriter(System.out)), 4096);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					defaultLog.close();
+				}
+			});
+		}
+		return defaultLog;
+	}
+
+	public boolean log(Type type, int user, String text) {
+		return log(type, user, text, null, 0);
+	}
+
+	public boolean log(Type type, int user, String text, float value) {
+		long position = claim(type);
+		if (position < 0) {
+			return false;
+		}
+		Record record = fill(position, type, user, text);
+		record.values[0] = value;
+		record.valueCount = 1;
+		publish(position);
+		return true;
+	}
+
+	/**
+	 * Queues an event; returns false if it was dropped. {@code values} is
+	 * copied, so the caller may reuse it.
+	 */
+	public boolean log(Type type, int user, String text, float[] values, int count) {
+		long position = claim(type);
+		if (position < 0) {
+			return false;
+		}
+		Record record = fill(position, type, user, text);
+		record.valueCount = values == null ? 0 : Math.min(count, MAX_VALUES);
+		if (record.valueCount > 0) {
+			System.arraycopy(values, 0, record.values, 0, record.valueCount);
+		}
+		publish(position);
+		return true;
+	}
+
+	/** Reserves the slot of the next record, or returns -1 if the event has to be dropped. */
+	private long claim(Type type) {
+		long position = tail.get();
+		while (true) {
+			if (!type.lifecycle && position - head >= lowPriorityLimit) {
+				dropped.incrementAndGet();
+				return -1;
+			}
+			int index = (int) position & mask;
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					break;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				// the writer has not freed this slot yet: full
+				dropped.incrementAndGet();
+				return -1;
+			} else {
+				position = tail.get();
+			}
+		}
+		return position;
+	}
+
+	private Record fill(long position, Type type, int user, String text) {
+		Record record = records[(int) position & mask];
+		record.time = System.currentTimeMillis();
+		record.type = type;
+		record.user = user;
+		record.text = text;
+		record.valueCount = 0;
+		return record;
+	}
+
+	private void publish(long position) {
+		sequences.set((int) position & mask, position + 1);
+		if (sleeping) {
+			LockSupport.unpark(writer);
+		}
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	public long getWritten() {
+		return written;
+	}
+
+	private void drain() {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+		Date date = new Date();
+		StringBuilder line = new StringBuilder(256);
+		long reportedDrops = 0;
+		boolean dirty = false;
+		try {
+			while (true) {
+				long position = head;
+				int index = (int) position & mask;
+				if (sequences.get(index) != position + 1) {
+					long drops = dropped.get();
+					if (drops != reportedDrops) {
+						date.setTime(System.currentTimeMillis());
+						out.write(format.format(date) + " dropped count=" + (drops - reportedDrops) + "\n");
+						reportedDrops = drops;
+						dirty = true;
+					}
+					if (dirty) {
+						out.flush();
+						dirty = false;
+					}
+					if (!running) {
+						return;
+					}
+					sleeping = true;
+					if (sequences.get(index) != position + 1) {
+						LockSupport.parkNanos(this, 100000000L);
+					}
+					sleeping = false;
+					continue;
+				}
+
+				Record record = records[index];
+				date.setTime(record.time);
+				line.setLength(0);
+				line.append(format.format(date)).append(' ').append(record.type.label);
+				if (record.user != 0) {
+					line.append(" user=").append(record.user);
+				}
+				if (record.text != null) {
+					line.append(' ');
+					if (record.type.textKey == null) {
+						line.append(record.text);
+					} else if (record.text.indexOf(' ') < 0) {
+						line.append(record.type.textKey).append('=').append(record.text);
+					} else {
+						line.append(record.type.textKey).append("=\"").append(record.text.replace("\"", "\\\"")).append('"');
+					}
+				}
+				if (record.type.valuesKey != null && record.valueCount > 0) {
+					line.append(' ').append(record.type.valuesKey).append('=');
+					for (int i = 0; i < record.valueCount; ++i) {
+						if (i > 0) {
+							line.append(',');
+						}
+						line.append(record.values[i]);
+					}
+				}
+				line.append('\n');
+				record.text = null;
+				sequences.lazySet(index, position + mask + 1);
+				head = position + 1;
+
+				out.append(line);
+				written++;
+				dirty = true;
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/** Writes out the queued events and stops the writer thread. */
+	public void close() {
+		running = false;
+		LockSupport.unpark(writer);
+		try {
+			writer.join(1000);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
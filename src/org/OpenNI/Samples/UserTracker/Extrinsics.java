@@ -0,0 +1,110 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Rigid transform from a sensor's real-world coordinates to the shared world
+ * frame of a {@link SensorManager}: a rotation followed by a translation, in
+ * millimetres.
+ */
+public final class Extrinsics {
+
+	public static final Extrinsics IDENTITY = new Extrinsics(0, 0, 0, 0);
+
+	/** Rotation matrix, row-major. */
+	private final float[] r;
+	private final float tx, ty, tz;
+
+	/**
+	 * @param yaw rotation about the sensor's y axis, in radians
+	 */
+	public Extrinsics(double yaw, float tx, float ty, float tz) {
+		this(yaw, 0, 0, tx, ty, tz);
+	}
+
+	/**
+	 * Rotates by {@code roll} about the sensor's z axis, then by {@code pitch}
+	 * about its x axis and then by {@code yaw} about its y axis, all in
+	 * radians; a positive pitch turns +y towards +z.
+	 */
+	public Extrinsics(double yaw, double pitch, double roll, float tx, float ty, float tz) {
+		this(multiply(multiply(rotateY(yaw), rotateX(pitch)), rotateZ(roll)), tx, ty, tz);
+	}
+
+	/**
+	 * @param rotation orthonormal 3x3 rotation matrix, row-major
+	 */
+	public Extrinsics(float[] rotation, float tx, float ty, float tz) {
+		if (rotation.length != 9) {
+			throw new IllegalArgumentException("expected a 3x3 matrix");
+		}
+		this.r = rotation.clone();
+		this.tx = tx;
+		this.ty = ty;
+		this.tz = tz;
+	}
+
+	private static float[] rotateX(double angle) {
+		float c = (float) Math.cos(angle), s = (float) Math.sin(angle);
+		return new float[] { 1, 0, 0, 0, c, -s, 0, s, c };
+	}
+
+	private static float[] rotateY(double angle) {
+		float c = (float) Math.cos(angle), s = (float) Math.sin(angle);
+		return new float[] { c, 0, s, 0, 1, 0, -s, 0, c };
+	}
+
+	private static float[] rotateZ(double angle) {
+		float c = (float) Math.cos(angle), s = (float) Math.sin(angle);
+		return new float[] { c, -s, 0, s, c, 0, 0, 0, 1 };
+	}
+
+	private static float[] multiply(float[] a, float[] b) {
+		float[] m = new float[9];
+		for (int i = 0; i < 3; ++i) {
+			for (int j = 0; j < 3; ++j) {
+				m[3 * i + j] = a[3 * i] * b[j] + a[3 * i + 1] * b[3 + j] + a[3 * i + 2] * b[6 + j];
+			}
+		}
+		return m;
+	}
+
+	/** Transform from world coordinates back to the sensor's. */
+	public Extrinsics inverse() {
+		float[] t = { r[0], r[3], r[6], r[1], r[4], r[7], r[2], r[5], r[8] };
+		return new Extrinsics(t, -(t[0] * tx + t[1] * ty + t[2] * tz), -(t[3] * tx + t[4] * ty + t[5] * tz),
+				-(t[6] * tx + t[7] * ty + t[8] * tz));
+	}
+
+	/**
+	 * Parses {@code yaw,tx,ty,tz} or {@code yaw,pitch,roll,tx,ty,tz} with the
+	 * angles in degrees, or a row-major rotation matrix followed by
+	 * {@code tx,ty,tz}.
+	 */
+	public static Extrinsics parse(String text) {
+		String[] values = text.split(",");
+		float[] v = new float[values.length];
+		for (int i = 0; i < values.length; ++i) {
+			v[i] = Float.parseFloat(values[i]);
+		}
+		switch (v.length) {
+		case 4:
+			return new Extrinsics(Math.toRadians(v[0]), v[1], v[2], v[3]);
+		case 6:
+			return new Extrinsics(Math.toRadians(v[0]), Math.toRadians(v[1]), Math.toRadians(v[2]), v[3], v[4], v[5]);
+		case 12:
+			float[] rotation = new float[9];
+			System.arraycopy(v, 0, rotation, 0, 9);
+			return new Extrinsics(rotation, v[9], v[10], v[11]);
+		default:
+			throw new IllegalArgumentException("expected yaw,tx,ty,tz or yaw,pitch,roll,tx,ty,tz or r00..r22,tx,ty,tz: "
+					+ text);
+		}
+	}
+
+	/** Stores the world position of sensor point (x, y, z) at {@code out[offset..offset + 2]}. */
+	public void apply(float x, float y, float z, float[] out, int offset) {
+		out[offset] = r[0] * x + r[1] * y + r[2] * z + tx;
+		out[offset + 1] = r[3] * x + r[4] * y + r[5] * z + ty;
+		out[offset + 2] = r[6] * x + r[7] * y + r[8] * z + tz;
+	}
+
+}
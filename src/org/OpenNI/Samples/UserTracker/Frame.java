@@ -0,0 +1,173 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.ArrayList;
+
+import org.OpenNI.SkeletonJoint;
+
+/**
+ * Snapshot of one sensor update shared by every view: depth map, user label
+ * map and the state and joints of each user. Joint and centre of mass
+ * positions are already converted to projective coordinates. A frame owns
+ * copies of the depth and label maps, row-major with one entry per pixel, so
+ * it can be handed between pipeline threads after the sensor has moved on.
+ */
+public class Frame {
+
+	/** Joints fetched for every tracked user, in drawing order. */
+	public static final SkeletonJoint[] JOINTS = {
+		SkeletonJoint.HEAD,
+		SkeletonJoint.NECK,
+
+		SkeletonJoint.LEFT_SHOULDER,
+		SkeletonJoint.LEFT_ELBOW,
+		SkeletonJoint.LEFT_HAND,
+
+		SkeletonJoint.RIGHT_SHOULDER,
+		SkeletonJoint.RIGHT_ELBOW,
+		SkeletonJoint.RIGHT_HAND,
+
+		SkeletonJoint.TORSO,
+
+		SkeletonJoint.LEFT_HIP,
+		SkeletonJoint.LEFT_KNEE,
+		SkeletonJoint.LEFT_FOOT,
+
+		SkeletonJoint.RIGHT_HIP,
+		SkeletonJoint.RIGHT_KNEE,
+		SkeletonJoint.RIGHT_FOOT
+	};
+
+	public static class User {
+
+		public int id;
+		/** Slot in the session's {@link UserRegistry}, -1 if not admitted. */
+		public int slot = -1;
+		public UserState state;
+		/** Projective centre of mass. */
+		public float comX, comY, comZ;
+		/**
+		 * Bounding box of the user's pixels in the label map, inclusive, filled
+		 * by {@link UserRegions} for the stages that use it, {@link DepthProcessor}
+		 * in region of interest mode and the {@link Calibrator}; maxX is -1 if unknown.
+		 */
+		public int minX, minY, maxX = -1, maxY = -1;
+		/** Packed joints, see {@link Skeleton}. */
+		public final float[] joints = new float[Skeleton.LENGTH];
+		public boolean hasJoints;
+		/** Bone vectors packed as x, y, z triples, filled by {@link SkeletonProcessor} for tracked users. */
+		public final float[] bones = new float[SkeletonProcessor.BONES.length * 3];
+		public boolean hasBones;
+		/** Pose label from the {@link PoseClassifier}, null if unclassified. */
+		public String pose;
+
+		void reset(int id) {
+			this.id = id;
+			slot = -1;
+			state = UserState.LOOKING_FOR_POSE;
+			comX = comY = comZ = 0;
+			minX = minY = 0;
+			maxX = maxY = -1;
+			hasJoints = false;
+			hasBones = false;
+			pose = null;
+		}
+
+		void copy(User other) {
+			slot = other.slot;
+			state = other.state;
+			comX = other.comX;
+			comY = other.comY;
+			comZ = other.comZ;
+			minX = other.minX;
+			minY = other.minY;
+			maxX = other.maxX;
+			maxY = other.maxY;
+			System.arraycopy(other.joints, 0, joints, 0, joints.length);
+			hasJoints = other.hasJoints;
+			System.arraycopy(other.bones, 0, bones, 0, bones.length);
+			hasBones = other.hasBones;
+			pose = other.pose;
+		}
+	}
+
+	public final int width, height;
+	public final short[] depth;
+	public final short[] scene;
+	/** RGB colorized depth map, filled by {@link DepthProcessor}; null in frames of headless sessions. */
+	public final byte[] image;
+	public long sequence;
+	/** Sensor timestamp of the depth map, in microseconds. */
+	public long timestamp;
+	public String calibPose;
+	/**
+	 * {@code System.nanoTime()} at which the sensor data of this frame became
+	 * available, set by the session; 0 outside a session.
+	 */
+	public long capturedNanos;
+	/** Pixels of {@link #image} colorized last time, as spans of positions; see {@link DepthProcessor}. */
+	int[] paintedStarts = new int[0], paintedEnds = new int[0];
+	int paintedCount = -1;
+	/** Joints the source should fetch, see {@link JointDemand}. Others are left cleared. */
+	public int requiredJoints = JointDemand.ALL;
+	/** Metrics of the session this frame was captured by, null outside a session. */
+	public PipelineMetrics metrics;
+	/** Users of this frame, in sensor order. Use {@link #addUser(int)} to add one. */
+	public final ArrayList<User> users = new ArrayList<User>();
+	private final ArrayList<User> userPool = new ArrayList<User>();
+	private final IntSlotMap userSlots = new IntSlotMap(16);
+
+	public Frame(int width, int height) {
+		this(width, height, true);
+	}
+
+	public Frame(int width, int height, boolean withImage) {
+		this.width = width;
+		this.height = height;
+		this.depth = new short[width * height];
+		this.scene = new short[width * height];
+		this.image = withImage ? new byte[width * height * 3] : null;
+	}
+
+	public void clearUsers() {
+		users.clear();
+		userSlots.clear();
+	}
+
+	/**
+	 * Adds a user to this frame, reusing the user objects of earlier frames.
+	 */
+	public User addUser(int id) {
+		int slot = users.size();
+		if (slot == userPool.size()) {
+			userPool.add(new User());
+		}
+		User user = userPool.get(slot);
+		user.reset(id);
+		users.add(user);
+		userSlots.put(id, slot);
+		return user;
+	}
+
+	/**
+	 * Copies the users and per-frame fields of {@code other}, but not its
+	 * maps, so the users can be read after the pipeline has reused it.
+	 */
+	public void copyUsers(Frame other) {
+		sequence = other.sequence;
+		timestamp = other.timestamp;
+		calibPose = other.calibPose;
+		capturedNanos = other.capturedNanos;
+		requiredJoints = other.requiredJoints;
+		clearUsers();
+		for (int i = 0; i < other.users.size(); ++i) {
+			User user = other.users.get(i);
+			addUser(user.id).copy(user);
+		}
+	}
+
+	public User getUser(int id) {
+		int slot = userSlots.get(id);
+		return slot < 0 ? null : users.get(slot);
+	}
+
+}
@@ -0,0 +1,10 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Receives every frame published by a {@link SensorSession}.
+ */
+public interface FrameListener {
+
+	void frameReady(Frame frame);
+
+}
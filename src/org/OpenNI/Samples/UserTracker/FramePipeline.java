@@ -0,0 +1,201 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.OpenNI.GeneralException;
+
+/**
+ * Runs a {@link SensorSession} as four threads, capture -> depth -> skeleton ->
+ * render, connected by bounded {@link FrameQueue}s. Frames come from a fixed
+ * pool and are recycled once the render stage has moved on to a newer one, so
+ * a slow consumer never stalls capture; it just sees fewer frames.
+ * <p>
+ * Stopping does not wait for a capture stage blocked in the sensor beyond a
+ * timeout: native waits ignore interrupts, so the daemon thread is left to
+ * return on its own and then exits without publishing its frame.
+ */
+public class FramePipeline {
+
+	public static final long STOP_TIMEOUT_MILLIS = 2000;
+
+	public class Stage implements Runnable {
+
+		private final String name;
+		private final FrameStage work;
+		private final FrameQueue input;
+		private final FrameQueue output;
+		private final AtomicLong processed = new AtomicLong();
+		private Frame displayed;
+		private Thread thread;
+
+		Stage(String name, FrameStage work, FrameQueue input, FrameQueue output) {
+			this.name = name;
+			this.work = work;
+			this.input = input;
+			this.output = output;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getQueueDepth() {
+			return input == null ? 0 : input.size();
+		}
+
+		public int getQueueCapacity() {
+			return input == null ? 0 : input.capacity();
+		}
+
+		public long getDropped() {
+			return input == null ? 0 : input.getDropped();
+		}
+
+		public long getProcessed() {
+			return processed.get();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					if (input == null) {
+						capture();
+					} else {
+						Frame frame = input.take();
+						if (output != null) {
+							work.process(frame);
+							output.put(frame);
+						} else {
+							render(frame);
+						}
+					}
+					processed.incrementAndGet();
+				}
+			} catch (InterruptedException e) {
+				// stopping
+			}
+		}
+
+		private void capture() throws InterruptedException {
+			Frame frame = pool.take();
+			try {
+				session.capture(frame);
+			} catch (GeneralException e) {
+				e.printStackTrace();
+				pool.offer(frame);
+				return;
+			}
+			if (!running) {
+				pool.offer(frame);
+				return;
+			}
+			frame.sequence = ++sequence;
+			output.put(frame);
+		}
+
+		private void render(Frame frame) {
+			session.publish(frame);
+			if (displayed != null) {
+				pool.offer(displayed);
+			}
+			displayed = frame;
+		}
+
+		@Override
+		public String toString() {
+			return name + "[queue=" + getQueueDepth() + "/" + getQueueCapacity() + " dropped=" + getDropped()
+					+ " processed=" + getProcessed() + "]";
+		}
+	}
+
+	private final SensorSession session;
+	private final ArrayBlockingQueue<Frame> pool;
+	private final List<Stage> stages = new ArrayList<Stage>();
+	private volatile boolean running;
+	private long sequence;
+
+	public FramePipeline(SensorSession session, int queueCapacity) {
+		this.session = session;
+
+		// every queue full, one frame in flight per stage and the one on screen
+		int poolSize = 3 * queueCapacity + 5;
+		pool = new ArrayBlockingQueue<Frame>(poolSize);
+		for (int i = 0; i < poolSize; ++i) {
+			pool.offer(session.createFrame());
+		}
+
+		FrameQueue toDepth = new FrameQueue(queueCapacity, pool);
+		FrameQueue toSkeleton = new FrameQueue(queueCapacity, pool);
+		FrameQueue toRender = new FrameQueue(queueCapacity, pool);
+
+		stages.add(new Stage("capture", null, null, toDepth));
+		stages.add(new Stage("depth", session.getDepthProcessor(), toDepth, toSkeleton));
+		stages.add(new Stage("skeleton", new FrameStage() {
+			@Override
+			public void process(Frame frame) {
+				session.processSkeleton(frame);
+			}
+		}, toSkeleton, toRender));
+		stages.add(new Stage("render", null, toRender, null));
+	}
+
+	public List<Stage> getStages() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	public void start() {
+		running = true;
+		session.getMetrics().addPipeline(this);
+		for (Stage stage : stages) {
+			stage.thread = new Thread(stage, "pipeline-" + stage.name);
+			stage.thread.setDaemon(true);
+			stage.thread.start();
+		}
+	}
+
+	/** Stops the stages, waiting at most {@link #STOP_TIMEOUT_MILLIS} for them. */
+	public boolean stop() {
+		return stop(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the stages and waits for them up to {@code timeout} in total.
+	 * Returns false if a stage is still running, see the class comment.
+	 */
+	public boolean stop(long timeout, TimeUnit unit) {
+		running = false;
+		for (Stage stage : stages) {
+			stage.thread.interrupt();
+		}
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		boolean stopped = true;
+		for (Stage stage : stages) {
+			try {
+				long left = deadline - System.nanoTime();
+				if (left > 0) {
+					stage.thread.join(TimeUnit.NANOSECONDS.toMillis(left) + 1);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if (stage.thread.isAlive()) {
+				EventLog.getDefault().log(EventLog.Type.MESSAGE, 0, "pipeline stage " + stage.name + " did not stop");
+				stopped = false;
+			}
+		}
+		session.getMetrics().removePipeline(this);
+		return stopped;
+	}
+
+	@Override
+	public String toString() {
+		return stages.toString();
+	}
+
+}
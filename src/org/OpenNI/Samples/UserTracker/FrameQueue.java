@@ -0,0 +1,49 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded hand-off between two pipeline stages. When the consumer falls
+ * behind the oldest queued frame is dropped and returned to the frame pool,
+ * so the consumer always gets the newest frames.
+ */
+public class FrameQueue {
+
+	private final ArrayBlockingQueue<Frame> queue;
+	private final BlockingQueue<Frame> pool;
+	private final AtomicLong dropped = new AtomicLong();
+
+	public FrameQueue(int capacity, BlockingQueue<Frame> pool) {
+		this.queue = new ArrayBlockingQueue<Frame>(capacity);
+		this.pool = pool;
+	}
+
+	public void put(Frame frame) {
+		while (!queue.offer(frame)) {
+			Frame oldest = queue.poll();
+			if (oldest != null) {
+				dropped.incrementAndGet();
+				pool.offer(oldest);
+			}
+		}
+	}
+
+	public Frame take() throws InterruptedException {
+		return queue.take();
+	}
+
+	public int size() {
+		return queue.size();
+	}
+
+	public int capacity() {
+		return queue.size() + queue.remainingCapacity();
+	}
+
+	public long getDropped() {
+		return dropped.get();
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands frames from the render thread to a component's {@code paint}. A frame
+ * is copied and a repaint requested only once the previous one has been
+ * painted; frames arriving in between are skipped, so a slow display costs
+ * neither copies nor a growing queue of paint events. The copy keeps the
+ * depth image and the users, so painting never reads a frame the pipeline has
+ * already reused.
+ */
+class FrameSnapshot {
+
+	private final Component component;
+	private final PipelineMetrics metrics;
+	private final DepthImage depthImage = new DepthImage();
+	private final Frame users = new Frame(0, 0, false);
+	private final AtomicBoolean pending = new AtomicBoolean();
+	private boolean empty = true;
+	private volatile long offered, skipped;
+	private long paintStart;
+
+	FrameSnapshot(Component component, PipelineMetrics metrics) {
+		this.component = component;
+		this.metrics = metrics;
+	}
+
+	/** Called for every new frame; returns false if the frame was skipped. */
+	boolean offer(Frame frame) {
+		offered++;
+		if (!pending.compareAndSet(false, true)) {
+			skipped++;
+			metrics.frameSkipped();
+			return false;
+		}
+		synchronized (this) {
+			if (frame.image != null) {
+				depthImage.update(frame);
+			}
+			users.copyUsers(frame);
+			empty = false;
+		}
+		component.repaint();
+		return true;
+	}
+
+	/**
+	 * Draws the depth image if {@code drawPixels} and returns the users to
+	 * draw, or null before the first frame. Call from {@code paint} while
+	 * holding the lock of this snapshot, and {@link #painted()} afterwards.
+	 */
+	Frame paint(Graphics g, boolean drawPixels) {
+		paintStart = metrics.now();
+		if (drawPixels) {
+			depthImage.draw(g);
+		}
+		return empty ? null : users;
+	}
+
+	/** Users of the last frame, or null before the first; hold the lock of this snapshot. */
+	Frame users() {
+		return empty ? null : users;
+	}
+
+	/** Accepts the next frame. */
+	void painted() {
+		metrics.record(PipelineMetrics.PAINT, paintStart);
+		pending.set(false);
+	}
+
+	long getOffered() {
+		return offered;
+	}
+
+	long getSkipped() {
+		return skipped;
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.OpenNI.Samples.UserTracker;
+
+import org.OpenNI.GeneralException;
+
+/**
+ * Supplier of depth, user label and skeleton data. Implemented on top of an
+ * OpenNI context for real sensors and by {@link SyntheticFrameSource} when no
+ * device is available.
+ */
+public interface FrameSource {
+
+	int getWidth();
+
+	int getHeight();
+
+	/**
+	 * Blocks until the next frame is available and stores it in {@code frame}.
+	 */
+	void readFrame(Frame frame) throws GeneralException;
+
+	void release();
+
+}
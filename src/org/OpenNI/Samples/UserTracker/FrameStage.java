@@ -0,0 +1,10 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * One processing step applied to every frame between capture and render.
+ */
+public interface FrameStage {
+
+	void process(Frame frame);
+
+}
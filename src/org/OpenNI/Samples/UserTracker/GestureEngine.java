@@ -0,0 +1,353 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Streaming gesture recognition over the bone vectors of every tracked user.
+ * <p>
+ * Each template is matched by subsequence dynamic time warping that is
+ * updated one column per frame (the SPRING scheme): a gesture may start at any
+ * frame, and only the cost of warping the newest frame onto the template is
+ * computed, so the work per user and frame is bounded by the template
+ * lengths. Cells whose cost already exceeds the template's limit are
+ * abandoned, and when no cell is alive and the newest frame lies further from
+ * the template's envelope than the limit, the column is skipped altogether.
+ * A match is reported on the first frame that completes the template within
+ * its limit, after which the template starts over for that user.
+ * <p>
+ * The last {@code history} frames of every user are kept in a ring buffer,
+ * from which new templates can be captured.
+ */
+public class GestureEngine implements FrameListener {
+
+	private static final int D = PoseDataset.DIMENSIONS;
+
+	/** Matching state of one user. */
+	private static class Track {
+		int userId;
+		long lastSequence;
+		final float[] ring;
+		final long[] ringTimestamps;
+		int ringHead;
+		int ringCount;
+		Match[] matches = new Match[0];
+
+		Track(int history) {
+			ring = new float[history * D];
+			ringTimestamps = new long[history];
+		}
+
+		void reset(int userId) {
+			this.userId = userId;
+			ringHead = 0;
+			ringCount = 0;
+			for (Match match : matches) {
+				if (match != null) {
+					match.clear();
+				}
+			}
+		}
+	}
+
+	/** Last two DTW columns of one template for one user, with the start time of each cell's path. */
+	private static class Match {
+		final GestureTemplate template;
+		float[] cost;
+		float[] previousCost;
+		long[] start;
+		long[] previousStart;
+		boolean alive;
+
+		Match(GestureTemplate template) {
+			this.template = template;
+			int length = template.getLength();
+			cost = new float[length + 1];
+			previousCost = new float[length + 1];
+			start = new long[length + 1];
+			previousStart = new long[length + 1];
+			clear();
+		}
+
+		void clear() {
+			Arrays.fill(cost, Float.POSITIVE_INFINITY);
+			Arrays.fill(previousCost, Float.POSITIVE_INFINITY);
+			alive = false;
+		}
+
+		void swap() {
+			float[] c = cost;
+			cost = previousCost;
+			previousCost = c;
+			long[] s = start;
+			start = previousStart;
+			previousStart = s;
+		}
+	}
+
+	private final int history;
+	private final CopyOnWriteArrayList<GestureTemplate> templates = new CopyOnWriteArrayList<GestureTemplate>();
+	private final CopyOnWriteArrayList<GestureListener> listeners = new CopyOnWriteArrayList<GestureListener>();
+	private final ArrayList<Track> tracks = new ArrayList<Track>();
+	private final IntSlotMap trackSlots = new IntSlotMap(16);
+	private long sequence;
+
+	private volatile long frames;
+	private volatile long totalNanos;
+	private volatile long maxNanos;
+	private volatile long pruned;
+	private volatile long events;
+
+	public GestureEngine() {
+		this(128);
+	}
+
+	/**
+	 * @param history frames kept per user for {@link #captureTemplate}
+	 */
+	public GestureEngine(int history) {
+		this.history = history;
+	}
+
+	public void addTemplate(GestureTemplate template) {
+		templates.add(template);
+	}
+
+	public void removeTemplate(GestureTemplate template) {
+		templates.remove(template);
+	}
+
+	public void addListener(GestureListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(GestureListener listener) {
+		listeners.remove(listener);
+	}
+
+	@Override
+	public synchronized void frameReady(Frame frame) {
+		long arrived = System.nanoTime();
+		// latency counts from the capture, so it includes the queues and stages before the engine
+		long captured = frame.capturedNanos != 0 ? frame.capturedNanos : arrived;
+		sequence++;
+		for (int i = 0; i < frame.users.size(); ++i) {
+			Frame.User user = frame.users.get(i);
+			if (user.hasBones) {
+				update(track(user.id), user.bones, frame.timestamp, captured);
+			}
+		}
+		dropLostUsers();
+
+		long elapsed = System.nanoTime() - arrived;
+		totalNanos += elapsed;
+		maxNanos = Math.max(maxNanos, elapsed);
+		frames++;
+	}
+
+	private Track track(int userId) {
+		int slot = trackSlots.get(userId);
+		Track track;
+		if (slot >= 0) {
+			track = tracks.get(slot);
+		} else {
+			track = new Track(history);
+			track.reset(userId);
+			trackSlots.put(userId, tracks.size());
+			tracks.add(track);
+		}
+		track.lastSequence = sequence;
+		return track;
+	}
+
+	private void dropLostUsers() {
+		for (int i = tracks.size() - 1; i >= 0; --i) {
+			Track track = tracks.get(i);
+			if (track.lastSequence != sequence) {
+				trackSlots.remove(track.userId);
+				Track last = tracks.remove(tracks.size() - 1);
+				if (last != track) {
+					tracks.set(i, last);
+					trackSlots.put(last.userId, i);
+				}
+			}
+		}
+	}
+
+	private void update(Track track, float[] bones, long timestamp, long captured) {
+		System.arraycopy(bones, 0, track.ring, track.ringHead * D, D);
+		track.ringTimestamps[track.ringHead] = timestamp;
+		track.ringHead = (track.ringHead + 1) % history;
+		track.ringCount = Math.min(track.ringCount + 1, history);
+
+		int t = 0;
+		for (GestureTemplate template : templates) {
+			if (track.matches.length <= t) {
+				track.matches = Arrays.copyOf(track.matches, t + 1);
+			}
+			Match match = track.matches[t];
+			if (match == null || match.template != template) {
+				match = track.matches[t] = new Match(template);
+			}
+			update(track, template, match, bones, timestamp, captured);
+			t++;
+		}
+	}
+
+	private void update(Track track, GestureTemplate template, Match match, float[] bones, long timestamp,
+			long captured) {
+		int length = template.getLength();
+		float limit = template.getThreshold() * length;
+		if (!match.alive && template.lowerBound(bones) > limit) {
+			pruned++;
+			return;
+		}
+		match.swap();
+		float[] cost = match.cost;
+		float[] previousCost = match.previousCost;
+		long[] start = match.start;
+		long[] previousStart = match.previousStart;
+
+		cost[0] = 0;
+		start[0] = timestamp;
+		boolean alive = false;
+		for (int i = 1; i <= length; ++i) {
+			float best = cost[i - 1];
+			long from = start[i - 1];
+			if (previousCost[i] < best) {
+				best = previousCost[i];
+				from = previousStart[i];
+			}
+			if (previousCost[i - 1] < best) {
+				best = previousCost[i - 1];
+				from = previousStart[i - 1];
+			}
+			float value = best == Float.POSITIVE_INFINITY ? best : best + template.distance(bones, i - 1);
+			if (value > limit) {
+				value = Float.POSITIVE_INFINITY;
+			} else {
+				alive = true;
+			}
+			cost[i] = value;
+			start[i] = from;
+		}
+		match.alive = alive;
+
+		if (cost[length] <= limit) {
+			float distance = cost[length] / length;
+			long begin = start[length];
+			match.clear();
+			events++;
+			GestureEvent event = new GestureEvent(track.userId, template.getName(), begin, timestamp, distance,
+					System.nanoTime() - captured);
+			for (GestureListener listener : listeners) {
+				listener.gestureDetected(event);
+			}
+		}
+	}
+
+	/**
+	 * Makes a template of the last {@code length} frames seen for a user, or
+	 * returns null if fewer frames have been seen.
+	 */
+	public synchronized GestureTemplate captureTemplate(int userId, String name, int length, float threshold) {
+		int slot = trackSlots.get(userId);
+		if (slot < 0 || length > tracks.get(slot).ringCount) {
+			return null;
+		}
+		Track track = tracks.get(slot);
+		float[] frames = new float[length * D];
+		for (int f = 0; f < length; ++f) {
+			int pos = (track.ringHead - length + f + history) % history;
+			System.arraycopy(track.ring, pos * D, frames, f * D, D);
+		}
+		return new GestureTemplate(name, frames, length, threshold);
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	public double getMeanNanos() {
+		long count = frames;
+		return count == 0 ? 0 : (double) totalNanos / count;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	/** Template updates skipped by the envelope lower bound. */
+	public long getPruned() {
+		return pruned;
+	}
+
+	public long getEvents() {
+		return events;
+	}
+
+	/**
+	 * Replays a skeleton recording through the engine and prints every match
+	 * and the per-frame cost. Templates are cut from the same recording:
+	 * {@code <recording> <name>:<user>:<first frame>-<last frame>[:threshold]...}
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: GestureEngine <recording> <name>:<user>:<first>-<last>[:threshold]...");
+			System.exit(2);
+		}
+		RecordedSkeletonSource source = new RecordedSkeletonSource(new File(args[0]));
+		SkeletonProcessor skeleton = new SkeletonProcessor();
+		Frame frame = new Frame(source.getWidth(), source.getHeight());
+		GestureEngine engine = new GestureEngine();
+
+		for (int a = 1; a < args.length; ++a) {
+			String[] spec = args[a].split(":");
+			int userId = Integer.parseInt(spec[1]);
+			String[] range = spec[2].split("-");
+			int first = Integer.parseInt(range[0]);
+			int last = Integer.parseInt(range[1]);
+			float threshold = spec.length > 3 ? Float.parseFloat(spec[3]) : 10;
+
+			float[] frames = new float[(last - first + 1) * D];
+			int length = 0;
+			source.seek(first);
+			for (int f = first; f <= last; ++f) {
+				source.readFrame(frame);
+				skeleton.process(frame);
+				Frame.User user = frame.getUser(userId);
+				if (user != null && user.hasBones) {
+					System.arraycopy(user.bones, 0, frames, length++ * D, D);
+				}
+			}
+			if (length == 0) {
+				System.err.println(spec[0] + ": user " + userId + " has no skeleton in frames " + spec[2]);
+				System.exit(1);
+			}
+			engine.addTemplate(new GestureTemplate(spec[0], frames, length, threshold));
+		}
+
+		engine.addListener(new GestureListener() {
+			@Override
+			public void gestureDetected(GestureEvent event) {
+				System.out.println(event);
+			}
+		});
+		source.seek(0);
+		long start = System.nanoTime();
+		for (int f = 0; f < source.getFrameCount(); ++f) {
+			source.readFrame(frame);
+			skeleton.process(frame);
+			engine.frameReady(frame);
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("frames=%d events=%d pruned=%d mean=%.1fus max=%.1fus replay=%.0fx real time%n",
+				engine.getFrames(), engine.getEvents(), engine.getPruned(), engine.getMeanNanos() / 1000,
+				engine.getMaxNanos() / 1000.0, engine.getFrames() / 30.0 / seconds);
+		source.release();
+	}
+
+}
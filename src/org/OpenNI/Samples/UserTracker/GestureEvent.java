@@ -0,0 +1,36 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * A gesture matched by the {@link GestureEngine}. Times are sensor timestamps
+ * in microseconds; the latency is the time from the capture of the frame that
+ * completed the gesture, {@link Frame#capturedNanos}, to raising the event, so
+ * it includes the pipeline queues and the depth and skeleton stages. For
+ * frames not captured by a session it counts from the engine receiving them.
+ */
+public class GestureEvent {
+
+	public final int userId;
+	public final String gesture;
+	public final long startTimestamp;
+	public final long endTimestamp;
+	/** Warping distance divided by the template length. */
+	public final float distance;
+	public final long latencyNanos;
+
+	public GestureEvent(int userId, String gesture, long startTimestamp, long endTimestamp, float distance,
+			long latencyNanos) {
+		this.userId = userId;
+		this.gesture = gesture;
+		this.startTimestamp = startTimestamp;
+		this.endTimestamp = endTimestamp;
+		this.distance = distance;
+		this.latencyNanos = latencyNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "user " + userId + " " + gesture + " [" + startTimestamp + ", " + endTimestamp + "] distance="
+				+ distance + " latency=" + latencyNanos / 1000 + "us";
+	}
+
+}
@@ -0,0 +1,11 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Receives the gestures matched by a {@link GestureEngine}, on the thread
+ * that delivers frames to the engine.
+ */
+public interface GestureListener {
+
+	void gestureDetected(GestureEvent event);
+
+}
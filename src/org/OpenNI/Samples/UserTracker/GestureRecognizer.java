@@ -23,246 +23,62 @@ package org.OpenNI.Samples.UserTracker;
 
 import org.OpenNI.*;
 
-import java.nio.ShortBuffer;
-import java.util.HashMap;
 import java.awt.*;
-import java.awt.color.ColorSpace;
-import java.awt.image.*;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.io.PrintWriter;
 
-public class GestureRecognizer extends Component
+public class GestureRecognizer extends Component implements FrameListener
 {
-	class NewUserObserver implements IObserver<UserEventArgs>
-	{
-		@Override
-		public void update(IObservable<UserEventArgs> observable,
-				UserEventArgs args)
-		{
-			System.out.println("New user " + args.getId());
-			try
-			{
-				if (skeletonCap.needPoseForCalibration())
-				{
-					poseDetectionCap.startPoseDetection(calibPose, args.getId());
-				}
-				else
-				{
-					skeletonCap.requestSkeletonCalibration(args.getId(), true);
-				}
-			} catch (StatusException e)
-			{
-				e.printStackTrace();
-			}
-		}
-	}
-	class LostUserObserver implements IObserver<UserEventArgs>
-	{
-		@Override
-		public void update(IObservable<UserEventArgs> observable,
-				UserEventArgs args)
-		{
-			System.out.println("Lost user " + args.getId());
-			joints.remove(args.getId());
-		}
-	}
-	
-	class CalibrationCompleteObserver implements IObserver<CalibrationProgressEventArgs>
-	{
-		@Override
-		public void update(IObservable<CalibrationProgressEventArgs> observable,
-				CalibrationProgressEventArgs args)
-		{
-			System.out.println("Calibraion complete: " + args.getStatus());
-			try
-			{
-			if (args.getStatus() == CalibrationProgressStatus.OK)
-			{
-				System.out.println("starting tracking "  +args.getUser());
-					skeletonCap.startTracking(args.getUser());
-	                joints.put(new Integer(args.getUser()), new HashMap<SkeletonJoint, SkeletonJointPosition>());
-			}
-			else if (args.getStatus() != CalibrationProgressStatus.MANUAL_ABORT)
-			{
-				if (skeletonCap.needPoseForCalibration())
-				{
-					poseDetectionCap.startPoseDetection(calibPose, args.getUser());
-				}
-				else
-				{
-					skeletonCap.requestSkeletonCalibration(args.getUser(), true);
-				}
-			}
-			} catch (StatusException e)
-			{
-				e.printStackTrace();
-			}
-		}
-	}
-	class PoseDetectedObserver implements IObserver<PoseDetectionEventArgs>
-	{
-		@Override
-		public void update(IObservable<PoseDetectionEventArgs> observable,
-				PoseDetectionEventArgs args)
-		{
-			System.out.println("Pose " + args.getPose() + " detected for " + args.getUser());
-			try
-			{
-				poseDetectionCap.stopPoseDetection(args.getUser());
-				skeletonCap.requestSkeletonCalibration(args.getUser(), true);
-			} catch (StatusException e)
-			{
-				e.printStackTrace();
-			}
-		}
-	}
     /**
 	 * 
 	 */
-	private Graphics g;
 	private static final long serialVersionUID = 1L;
-	private OutArg<ScriptNode> scriptNode;
-    private Context context;
-    private DepthGenerator depthGen;
-    private UserGenerator userGen;
-    private SkeletonCapability skeletonCap;
-    private PoseDetectionCapability poseDetectionCap;
-    private byte[] imgbytes;
-    private float histogram[];
-    String calibPose = null;
-    HashMap<Integer, HashMap<SkeletonJoint, SkeletonJointPosition>> joints;
+    private static final int FIGURE_SPACING = 250;
+    private int figures;
 
-    private boolean drawBackground = true;
     private boolean drawPixels = true;
     private boolean drawSkeleton = true;
     private boolean printID = true;
     private boolean printState = true;
     
     
-    private BufferedImage bimg;
+    private final FrameSnapshot snapshot;
     int width, height;
+    private final SensorSession session;
     
-    private final String SAMPLE_XML_FILE = "SamplesConfig.xml";
-    public GestureRecognizer()
+    public GestureRecognizer(SensorSession session)
     {
+        this.session = session;
+        width = session.getWidth();
+        height = session.getHeight();
 
-        try {
-            scriptNode = new OutArg<ScriptNode>();
-            context = Context.createFromXmlFile(SAMPLE_XML_FILE, scriptNode);
-
-            depthGen = DepthGenerator.create(context);
-            DepthMetaData depthMD = depthGen.getMetaData();
-
-            histogram = new float[10000];
-            width = depthMD.getFullXRes();
-            height = depthMD.getFullYRes();
-            
-            imgbytes = new byte[width*height*3];
-
-            userGen = UserGenerator.create(context);
-            skeletonCap = userGen.getSkeletonCapability();
-            poseDetectionCap = userGen.getPoseDetectionCapability();
-            
-            userGen.getNewUserEvent().addObserver(new NewUserObserver());
-            userGen.getLostUserEvent().addObserver(new LostUserObserver());
-            skeletonCap.getCalibrationCompleteEvent().addObserver(new CalibrationCompleteObserver());
-            poseDetectionCap.getPoseDetectedEvent().addObserver(new PoseDetectedObserver());
-            
-            calibPose = skeletonCap.getSkeletonCalibrationPose();
-            joints = new HashMap<Integer, HashMap<SkeletonJoint,SkeletonJointPosition>>();
-            
-            skeletonCap.setSkeletonProfile(SkeletonProfile.ALL);
-			
-			context.startGeneratingAll();
-        } catch (GeneralException e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
+        session.getJointDemand().require(this, Frame.JOINTS);
+        snapshot = new FrameSnapshot(this, session.getMetrics());
+        session.addListener(this);
     }
     
-    private void calcHist(ShortBuffer depth)
+    @Override
+    public void frameReady(Frame frame)
     {
-        // reset
-        for (int i = 0; i < histogram.length; ++i)
-            histogram[i] = 0;
-        
-        depth.rewind();
-
-        int points = 0;
-        while(depth.remaining() > 0)
+        String pose = recordingPose;
+        if (pose != null)
         {
-            short depthVal = depth.get();
-            if (depthVal != 0)
+            for (int i = 0; i < frame.users.size(); ++i)
             {
-                histogram[depthVal]++;
-                points++;
-            }
-        }
-        
-        for (int i = 1; i < histogram.length; i++)
-        {
-            histogram[i] += histogram[i-1];
-        }
-
-        if (points > 0)
-        {
-            for (int i = 1; i < histogram.length; i++)
-            {
-                histogram[i] = 1.0f - (histogram[i] / (float)points);
+                Frame.User user = frame.users.get(i);
+                if (user.hasBones)
+                {
+                    getWriter().record(user.bones, pose);
+                }
             }
         }
+        snapshot.offer(frame);
     }
 
-
-    void updateDepth()
+    /** Frames skipped while the previous one had not been painted yet. */
+    public long getSkippedFrames()
     {
-        try {
-
-            context.waitAnyUpdateAll();
-
-            DepthMetaData depthMD = depthGen.getMetaData();
-            SceneMetaData sceneMD = userGen.getUserPixels(0);
-
-            ShortBuffer scene = sceneMD.getData().createShortBuffer();
-            ShortBuffer depth = depthMD.getData().createShortBuffer();
-            calcHist(depth);
-            depth.rewind();
-            
-            while(depth.remaining() > 0)
-            {
-                int pos = depth.position();
-                short pixel = depth.get();
-                short user = scene.get();
-                
-        		imgbytes[3*pos] = 0;
-        		imgbytes[3*pos+1] = 0;
-        		imgbytes[3*pos+2] = 0;                	
-
-                if (drawBackground || pixel != 0)
-                {
-                	int colorID = user % (colors.length-1);
-                	if (user == 0)
-                	{
-                		colorID = colors.length-1;
-                	}
-                	if (pixel != 0)
-                	{
-                		float histValue = histogram[pixel];
-                		imgbytes[3*pos] = (byte)(histValue*colors[colorID].getRed());
-                		imgbytes[3*pos+1] = (byte)(histValue*colors[colorID].getGreen());
-                		imgbytes[3*pos+2] = (byte)(histValue*colors[colorID].getBlue());
-                	}
-                }
-            }
-        } catch (GeneralException e) {
-            e.printStackTrace();
-        }
+        return snapshot.getSkipped();
     }
 
 
@@ -271,40 +87,15 @@ public class GestureRecognizer extends Component
     }
 
     Color colors[] = {Color.RED, Color.BLUE, Color.CYAN, Color.GREEN, Color.MAGENTA, Color.PINK, Color.YELLOW, Color.WHITE};
-    public void getJoint(int user, SkeletonJoint joint) throws StatusException
+    Color inverseColors[] = new Color[colors.length];
     {
-        SkeletonJointPosition pos = skeletonCap.getSkeletonJointPosition(user, joint);
-		if (pos.getPosition().getZ() != 0)
-		{
-			joints.get(user).put(joint, new SkeletonJointPosition(depthGen.convertRealWorldToProjective(pos.getPosition()), pos.getConfidence()));
-		}
-		else
-		{
-			joints.get(user).put(joint, new SkeletonJointPosition(new Point3D(), 0));
-		}
+        for (int i = 0; i < colors.length; ++i)
+        {
+            Color c = colors[i];
+            inverseColors[i] = new Color(255-c.getRed(), 255-c.getGreen(), 255-c.getBlue());
+        }
     }
     /*********************/
-    public Point3D getSkeletonJointPosition(int user, SkeletonJoint joint)
-    {
-    		SkeletonJointPosition position = null;
-    		Point3D realWorldPosition = null;
-			try {
-				position = skeletonCap.getSkeletonJointPosition(user, joint);
-				realWorldPosition = depthGen.convertRealWorldToProjective(position.getPosition());
-			} catch (StatusException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			
-			//drawCircle(realWorldPosition);
-    		
-    		return realWorldPosition;
-    }
-    
-    public void drawCircle( Point3D point ) {
-    	drawCenteredCircle(this.g, (int)point.getX(), (int)point.getY(), 10);
-    }
-    
     public void drawCenteredCircle(Graphics g2, int f, int h, int r) {
     	
     	  f = f-(r/2);
@@ -315,44 +106,19 @@ public class GestureRecognizer extends Component
     
     /*********************/
     
-    public void getJoints(int user) throws StatusException
-    {
-    	getJoint(user, SkeletonJoint.HEAD);
-    	getJoint(user, SkeletonJoint.NECK);
-    	
-    	getJoint(user, SkeletonJoint.LEFT_SHOULDER);
-    	getJoint(user, SkeletonJoint.LEFT_ELBOW);
-    	getJoint(user, SkeletonJoint.LEFT_HAND);
-
-    	getJoint(user, SkeletonJoint.RIGHT_SHOULDER);
-    	getJoint(user, SkeletonJoint.RIGHT_ELBOW);
-    	getJoint(user, SkeletonJoint.RIGHT_HAND);
-
-    	getJoint(user, SkeletonJoint.TORSO);
-
-    	getJoint(user, SkeletonJoint.LEFT_HIP);
-        getJoint(user, SkeletonJoint.LEFT_KNEE);
-        getJoint(user, SkeletonJoint.LEFT_FOOT);
-
-    	getJoint(user, SkeletonJoint.RIGHT_HIP);
-        getJoint(user, SkeletonJoint.RIGHT_KNEE);
-        getJoint(user, SkeletonJoint.RIGHT_FOOT);
-
-    }
-    void drawLine(Graphics g, HashMap<SkeletonJoint, SkeletonJointPosition> jointHash, SkeletonJoint joint1, SkeletonJoint joint2)
+    void drawLine(Graphics g, float[] joints, SkeletonJoint joint1, SkeletonJoint joint2)
     {
-		Point3D pos1 = jointHash.get(joint1).getPosition();
-		Point3D pos2 = jointHash.get(joint2).getPosition();
+		int pos1 = Skeleton.offset(joint1);
+		int pos2 = Skeleton.offset(joint2);
 
-		if (jointHash.get(joint1).getConfidence() == 0 || jointHash.get(joint2).getConfidence() == 0)
+		if (joints[pos1 + Skeleton.CONFIDENCE] == 0 || joints[pos2 + Skeleton.CONFIDENCE] == 0)
 			return;
 
-		//g.drawLine((int)pos1.getX(), (int)pos1.getY(), (int)pos2.getX(), (int)pos2.getY());
+		//g.drawLine((int)joints[pos1 + Skeleton.PROJECTIVE_X], (int)joints[pos1 + Skeleton.PROJECTIVE_Y], (int)joints[pos2 + Skeleton.PROJECTIVE_X], (int)joints[pos2 + Skeleton.PROJECTIVE_Y]);
     }
-    public void drawSkeleton(Graphics g, int user) throws StatusException
+    public void drawSkeleton(Graphics g, Frame.User user)
     {
-    	getJoints(user);
-    	HashMap<SkeletonJoint, SkeletonJointPosition> dict = joints.get(new Integer(user));
+    	float[] dict = user.joints;
 
     	drawLine(g, dict, SkeletonJoint.HEAD, SkeletonJoint.NECK);
 
@@ -378,54 +144,39 @@ public class GestureRecognizer extends Component
     	drawLine(g, dict, SkeletonJoint.RIGHT_KNEE, SkeletonJoint.RIGHT_FOOT);
     	
     	
-    	   Point3D head = getSkeletonJointPosition(1, SkeletonJoint.HEAD);
-       	Point3D neck = this.getSkeletonJointPosition(1, SkeletonJoint.NECK);
-       	Point3D LEFT_SHOULDER = this.getSkeletonJointPosition(1, SkeletonJoint.LEFT_SHOULDER);
-       	Point3D LEFT_ELBOW = this.getSkeletonJointPosition(1, SkeletonJoint.LEFT_ELBOW);
-       	Point3D LEFT_HAND = this.getSkeletonJointPosition(1, SkeletonJoint.LEFT_HAND);
-       	Point3D RIGHT_SHOULDER = this.getSkeletonJointPosition(1, SkeletonJoint.RIGHT_SHOULDER);
-
-       	Point3D RIGHT_ELBOW = this.getSkeletonJointPosition(1, SkeletonJoint.RIGHT_ELBOW);
-       	Point3D RIGHT_HAND = this.getSkeletonJointPosition(1, SkeletonJoint.RIGHT_HAND);
-       	
-       	Point3D TORSO = this.getSkeletonJointPosition(1, SkeletonJoint.TORSO);
-
-       	Point3D LEFT_HIP = this.getSkeletonJointPosition(1, SkeletonJoint.LEFT_HIP);
-       	Point3D LEFT_KNEE = this.getSkeletonJointPosition(1, SkeletonJoint.LEFT_KNEE);
-       	Point3D LEFT_FOOT = this.getSkeletonJointPosition(1, SkeletonJoint.LEFT_FOOT);
-       	
-       	Point3D RIGHT_HIP = this.getSkeletonJointPosition(1, SkeletonJoint.RIGHT_HIP);
-
-       	Point3D RIGHT_KNEE = this.getSkeletonJointPosition(1, SkeletonJoint.RIGHT_KNEE);
-
-       	Point3D RIGHT_FOOT = this.getSkeletonJointPosition(1, SkeletonJoint.RIGHT_FOOT);
+       	if (!user.hasBones)
+       	{
+       		return;
+       	}
+       	float[] bones = user.bones;
        	
     	/** ___________________________________ **/
        	
-       	int StartX = 150;
+       	// one bone figure per tracked user, side by side
+       	int StartX = 150 + FIGURE_SPACING * figures++;
        	int StartY = 100;
        	
        	int curX = StartX;
        	int curY = StartY;
        	
-       	neckVector = normalization(new Vector3D(head, neck));
-       	leftShoulder = normalization(new Vector3D(neck, LEFT_SHOULDER));
-       	leftElbow = normalization(new Vector3D(LEFT_SHOULDER, LEFT_ELBOW));
-       	leftHand = normalization(new Vector3D(LEFT_ELBOW, LEFT_HAND));
+       	neckVector.load(bones, 0);
+       	leftShoulder.load(bones, 1);
+       	leftElbow.load(bones, 2);
+       	leftHand.load(bones, 3);
        	
-       	rightShoulder = normalization(new Vector3D(neck, RIGHT_SHOULDER));
-       	rightElbow = normalization(new Vector3D(RIGHT_SHOULDER, RIGHT_ELBOW));
-       	rightHand = normalization(new Vector3D(RIGHT_ELBOW, RIGHT_HAND));
+       	rightShoulder.load(bones, 4);
+       	rightElbow.load(bones, 5);
+       	rightHand.load(bones, 6);
        	
-       	leftWing = normalization(new Vector3D(LEFT_SHOULDER, TORSO));
-       	 rightSide = normalization(new Vector3D(TORSO, RIGHT_HIP));
-       	 rightKnee = normalization(new Vector3D(RIGHT_HIP, RIGHT_KNEE));
-       	 footKnee = normalization(new Vector3D(RIGHT_KNEE, RIGHT_FOOT));
+       	leftWing.load(bones, 7);
+       	 rightSide.load(bones, 8);
+       	 rightKnee.load(bones, 9);
+       	 footKnee.load(bones, 10);
        	
-       	 rightWing = normalization(new Vector3D(RIGHT_SHOULDER, TORSO));
-       	 leftSide = normalization(new Vector3D(TORSO, LEFT_HIP));
-       	 leftKnee = normalization(new Vector3D(LEFT_HIP, LEFT_KNEE));
-       	 leftFoot = normalization(new Vector3D(LEFT_KNEE, LEFT_FOOT));
+       	 rightWing.load(bones, 11);
+       	 leftSide.load(bones, 12);
+       	 leftKnee.load(bones, 13);
+       	 leftFoot.load(bones, 14);
        	
     	/** ___________________________________ **/
        	
@@ -495,185 +246,191 @@ public class GestureRecognizer extends Component
 
     }
     
-    Vector3D neckVector = null;
-   	Vector3D leftShoulder = null;
-   	Vector3D leftElbow = null;
-   	Vector3D leftHand = null;
+    Vector3D neckVector = new Vector3D();
+   	Vector3D leftShoulder = new Vector3D();
+   	Vector3D leftElbow = new Vector3D();
+   	Vector3D leftHand = new Vector3D();
    	
-   	Vector3D rightShoulder = null;
-   	Vector3D rightElbow = null;
-   	Vector3D rightHand = null;
+   	Vector3D rightShoulder = new Vector3D();
+   	Vector3D rightElbow = new Vector3D();
+   	Vector3D rightHand = new Vector3D();
    	
-   	Vector3D leftWing = null;
-   	Vector3D rightSide = null;
-   	Vector3D rightKnee = null;
-   	Vector3D footKnee = null;
+   	Vector3D leftWing = new Vector3D();
+   	Vector3D rightSide = new Vector3D();
+   	Vector3D rightKnee = new Vector3D();
+   	Vector3D footKnee = new Vector3D();
    	
-   	Vector3D rightWing = null;
-   	Vector3D leftSide = null;
-   	Vector3D leftKnee = null;
-   	Vector3D leftFoot = null;
+   	Vector3D rightWing = new Vector3D();
+   	Vector3D leftSide = new Vector3D();
+   	Vector3D leftKnee = new Vector3D();
+   	Vector3D leftFoot = new Vector3D();
+    
+    String outputFile = "output.arff";
+    String headerFile = "header.txt";
+    private ArffWriter writer;
+    private final float[] sample = new float[ArffWriter.ROW_LENGTH];
+    private volatile String recordingPose;
     
+    /**
+     * Records the bone vectors of every tracked user on screen under the
+     * given label.
+     */
     public void scanVectors(String pose) {
-    	write("output.arff" ,neckVector.toString());
-    	write("output.arff" ,leftShoulder.toString());
-    	write("output.arff" ,leftElbow.toString());
-    	write("output.arff" ,leftHand.toString());
-    	write("output.arff" ,rightShoulder.toString());
-    	write("output.arff" ,rightElbow.toString());
-    	write("output.arff" ,rightHand.toString());
-    	write("output.arff" ,leftWing.toString());
-    	write("output.arff" ,rightSide.toString());
-    	write("output.arff" ,rightKnee.toString());
-    	write("output.arff" ,footKnee.toString());
-    	write("output.arff" ,rightWing.toString());
-    	write("output.arff" ,leftSide.toString());
-    	write("output.arff" ,leftKnee.toString());
-    	write("output.arff" ,leftFoot.toString());
-    	write("output.arff" ,pose);
-    	write("output.arff" ,"\n");
-    	
-    	System.out.print(neckVector);
-    	System.out.print(leftShoulder);
-    	System.out.print(leftElbow);
-    	System.out.print(leftHand);
-    	System.out.print(rightShoulder);
-    	System.out.print(rightElbow);
-    	System.out.print(rightHand);
-    	System.out.print(leftWing);
-    	System.out.print(rightSide);
-    	System.out.print(rightKnee);
-    	System.out.print(footKnee);
-    	
-    	System.out.print(rightWing);
-    	System.out.print(leftSide);
-    	System.out.print(leftKnee);
-    	System.out.print(leftFoot);
-    	System.out.println();	
+    	synchronized (snapshot)
+    	{
+    		Frame users = snapshot.users();
+    		if (users == null)
+    		{
+    			return;
+    		}
+    		for (int i = 0; i < users.users.size(); ++i)
+    		{
+    			Frame.User user = users.users.get(i);
+    			if (user.hasBones)
+    			{
+    				System.arraycopy(user.bones, 0, sample, 0, sample.length);
+    				getWriter().record(sample, pose);
+    				addTrainingSample(sample, pose);
+    				EventLog.getDefault().log(EventLog.Type.SAMPLE, user.id, pose, sample, sample.length);
+    			}
+    		}
+    	}
     }
     
-    public static void write(String fileName, String text) {
-        File file = new File(fileName);
-     
-        try {
-            if(!file.exists()){
-                file.createNewFile();
-                File header = new File("header.txt");
-                copyFile(header, file);
-            }
-  
-            FileWriter out = new FileWriter(file.getAbsoluteFile(), true);
-     
-            try {
-                
-                out.write(text);
-            } finally {
-                out.close();
-            }
-        } catch(IOException e) {
-            throw new RuntimeException(e);
-        }
+    /** Id of the first tracked user on screen, or 0 if there is none. */
+    public int getSelectedUserId()
+    {
+    	synchronized (snapshot)
+    	{
+    		Frame users = snapshot.users();
+    		for (int i = 0; users != null && i < users.users.size(); ++i)
+    		{
+    			if (users.users.get(i).hasBones)
+    			{
+    				return users.users.get(i).id;
+    			}
+    		}
+    		return 0;
+    	}
     }
     
-    private static void copyFile(File source, File dest) throws IOException {
-        InputStream is = null;
-        OutputStream os = null;
-        try {
-            is = new FileInputStream(source);
-            os = new FileOutputStream(dest);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = is.read(buffer)) > 0) {
-                os.write(buffer, 0, length);
-            }
-        } finally {
-            is.close();
-            os.close();
-        }
+    /**
+     * Records the bone vectors of every tracked user on every frame under
+     * the given label, until {@link #stopRecording()}. Only the training data
+     * file gets them; the live classifier learns from {@link #scanVectors}.
+     */
+    public void startRecording(String pose)
+    {
+    	getWriter();
+    	recordingPose = pose;
     }
-
-
     
+    public void stopRecording()
+    {
+    	recordingPose = null;
+    }
     
-    private Vector3D normalization(Vector3D vector) {
-    	
-    	vector = vector.getNormalizedVector();
-    	
-    	vector.multiply(50f);
-    	
-    	return vector;
+    private void addTrainingSample(float[] bones, String pose)
+    {
+    	PoseClassifier classifier = session.getSkeletonProcessor().getPoseClassifier();
+    	if (classifier != null)
+    	{
+    		classifier.add(bones, pose);
+    	}
     }
     
-    public void paint(Graphics g)
+    synchronized ArffWriter getWriter()
     {
-    	this.g = g;
-    	if (drawPixels)
+    	if (writer == null)
     	{
-            DataBufferByte dataBuffer = new DataBufferByte(imgbytes, width*height*3);
-
-            WritableRaster raster = Raster.createInterleavedRaster(dataBuffer, width, height, width * 3, 3, new int[]{0, 1, 2}, null); 
-
-            ColorModel colorModel = new ComponentColorModel(ColorSpace.getInstance(ColorSpace.CS_sRGB), new int[]{8, 8, 8}, false, false, ComponentColorModel.OPAQUE, DataBuffer.TYPE_BYTE);
-
-            bimg = new BufferedImage(colorModel, raster, false, null);
+    		try {
+    			writer = new ArffWriter(new File(outputFile), new File(headerFile));
+    		} catch (IOException e) {
+    			throw new RuntimeException(e);
+    		}
+    	}
+    	return writer;
+    }
+    
+    /**
+     * Flushes and closes the training data file.
+     */
+    public synchronized void close()
+    {
+    	recordingPose = null;
+    	if (writer != null)
+    	{
+    		try {
+    			writer.close();
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    	}
+    }
 
-    		g.drawImage(bimg, 0, 0, null);
+    public void paint(Graphics g)
+    {
+    	synchronized (snapshot)
+    	{
+    		paintSnapshot(g);
     	}
-        try
+    	snapshot.painted();
+    }
+
+    private void paintSnapshot(Graphics g)
+    {
+    	figures = 0;
+    	Frame frame = snapshot.paint(g, drawPixels);
+		if (frame == null)
+		{
+			return;
+		}
+		for (int i = 0; i < frame.users.size(); ++i)
 		{
-			int[] users = userGen.getUsers();
-			for (int i = 0; i < users.length; ++i)
+			Frame.User user = frame.users.get(i);
+	    	g.setColor(inverseColors[user.id%colors.length]);
+			if (drawSkeleton && user.state == UserState.TRACKING)
 			{
-		    	Color c = colors[users[i]%colors.length];
-		    	c = new Color(255-c.getRed(), 255-c.getGreen(), 255-c.getBlue());
-
-		    	g.setColor(c);
-				if (drawSkeleton && skeletonCap.isSkeletonTracking(users[i]))
+				drawSkeleton(g, user);
+			}
+			if (printID)
+			{
+				String label = null;
+				if (!printState)
 				{
-					drawSkeleton(g, users[i]);
+					label = new String(""+user.id);
 				}
-				if (printID)
+				else if (user.state == UserState.TRACKING)
 				{
-					Point3D com = depthGen.convertRealWorldToProjective(userGen.getUserCoM(users[i]));
-					String label = null;
-					if (!printState)
-					{
-						label = new String(""+users[i]);
-					}
-					else if (skeletonCap.isSkeletonTracking(users[i]))
-					{
-						// Tracking
-						label = new String(users[i] + " - Tracking");
-					}
-					else if (skeletonCap.isSkeletonCalibrating(users[i]))
-					{
-						// Calibrating
-						label = new String(users[i] + " - Calibrating");
-					}
-					else
-					{
-						// Nothing
-						label = new String(users[i] + " - Looking for pose (" + calibPose + ")");
-					}
-
-					g.drawString(label, (int)com.getX(), (int)com.getY());
+					// Tracking
+					label = new String(user.id + " - Tracking" + (user.pose == null ? "" : " (" + user.pose + ")"));
 				}
+				else if (user.state == UserState.CALIBRATING)
+				{
+					// Calibrating
+					label = new String(user.id + " - Calibrating");
+				}
+				else
+				{
+					// Nothing
+					label = new String(user.id + " - Looking for pose (" + frame.calibPose + ")");
+				}
+
+				g.drawString(label, (int)user.comX, (int)user.comY);
 			}
-		} catch (StatusException e)
-		{
-			e.printStackTrace();
 		}
     }
     
+    private final float[] pointValues = new float[3];
+    
     public void printPoint(Point3D point) {
     	if(point == null) {
-    		System.out.println("(null:null:null)");
+    		EventLog.getDefault().log(EventLog.Type.POINT, 0, null);
     	} else {
-    		float x = point.getX();
-    		float y = point.getY();
-    		float z = point.getZ();
-    		
-    		System.out.println("(" + x + ":" + y +":" + z +")");
+    		pointValues[0] = point.getX();
+    		pointValues[1] = point.getY();
+    		pointValues[2] = point.getZ();
+    		EventLog.getDefault().log(EventLog.Type.POINT, 0, null, pointValues, 3);
     	}
     }
 }
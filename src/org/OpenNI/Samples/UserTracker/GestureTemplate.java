@@ -0,0 +1,78 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.Arrays;
+
+/**
+ * Recorded motion matched by the {@link GestureEngine}: a sequence of bone
+ * vector frames, {@link PoseDataset#DIMENSIONS} floats each, and the largest
+ * warping distance per template frame still accepted as a match. The
+ * per-dimension envelope over all frames gives a cheap lower bound on the
+ * distance from any input frame to any template frame.
+ */
+public class GestureTemplate {
+
+	private final String name;
+	private final float[] frames;
+	private final int length;
+	private final float threshold;
+	private final float[] lower = new float[PoseDataset.DIMENSIONS];
+	private final float[] upper = new float[PoseDataset.DIMENSIONS];
+
+	/**
+	 * @param frames {@code length} frames of bone vectors, copied
+	 * @param threshold accepted warping distance divided by {@code length}
+	 */
+	public GestureTemplate(String name, float[] frames, int length, float threshold) {
+		if (length < 1) {
+			throw new IllegalArgumentException("empty gesture template " + name);
+		}
+		this.name = name;
+		this.frames = Arrays.copyOf(frames, length * PoseDataset.DIMENSIONS);
+		this.length = length;
+		this.threshold = threshold;
+
+		Arrays.fill(lower, Float.MAX_VALUE);
+		Arrays.fill(upper, -Float.MAX_VALUE);
+		for (int f = 0, base = 0; f < length; ++f, base += PoseDataset.DIMENSIONS) {
+			for (int i = 0; i < PoseDataset.DIMENSIONS; ++i) {
+				lower[i] = Math.min(lower[i], this.frames[base + i]);
+				upper[i] = Math.max(upper[i], this.frames[base + i]);
+			}
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public float getThreshold() {
+		return threshold;
+	}
+
+	/** Euclidean distance from {@code features} to template frame {@code frame}. */
+	float distance(float[] features, int frame) {
+		int base = frame * PoseDataset.DIMENSIONS;
+		float sum = 0;
+		for (int i = 0; i < PoseDataset.DIMENSIONS; ++i) {
+			float d = frames[base + i] - features[i];
+			sum += d * d;
+		}
+		return (float) Math.sqrt(sum);
+	}
+
+	/** Lower bound of {@link #distance(float[], int)} over every template frame. */
+	float lowerBound(float[] features) {
+		float sum = 0;
+		for (int i = 0; i < PoseDataset.DIMENSIONS; ++i) {
+			float v = features[i];
+			float d = v < lower[i] ? lower[i] - v : v > upper[i] ? v - upper[i] : 0;
+			sum += d * d;
+		}
+		return (float) Math.sqrt(sum);
+	}
+
+}
@@ -0,0 +1,113 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing map from int keys (user ids) to int slots, so lookups by
+ * user id neither box nor allocate. {@link Integer#MIN_VALUE} cannot be used
+ * as a key.
+ */
+public class IntSlotMap {
+
+	private static final int FREE = Integer.MIN_VALUE;
+
+	private int[] keys;
+	private int[] values;
+	private int mask;
+	private int size;
+
+	public IntSlotMap(int expectedSize) {
+		int capacity = Integer.highestOneBit(Math.max(2, expectedSize * 2) - 1) << 1;
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+		Arrays.fill(keys, FREE);
+	}
+
+	private int index(int key) {
+		int h = key * 0x9E3779B9;
+		return (h ^ (h >>> 16)) & mask;
+	}
+
+	/** Returns the slot of {@code key}, or -1 if it is not in the map. */
+	public int get(int key) {
+		for (int i = index(key);; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+			if (keys[i] == FREE) {
+				return -1;
+			}
+		}
+	}
+
+	public void put(int key, int slot) {
+		int i = index(key);
+		while (keys[i] != FREE && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		if (keys[i] == FREE) {
+			if (2 * (size + 1) > keys.length) {
+				grow();
+				put(key, slot);
+				return;
+			}
+			size++;
+		}
+		keys[i] = key;
+		values[i] = slot;
+	}
+
+	/** Removes {@code key} and returns its slot, or -1 if it was not in the map. */
+	public int remove(int key) {
+		int i = index(key);
+		while (keys[i] != key) {
+			if (keys[i] == FREE) {
+				return -1;
+			}
+			i = (i + 1) & mask;
+		}
+		int slot = values[i];
+		keys[i] = FREE;
+		size--;
+
+		// shift back the entries of the probe run that follows
+		for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+			int home = index(keys[j]);
+			if (((j - home) & mask) >= ((j - i) & mask)) {
+				keys[i] = keys[j];
+				values[i] = values[j];
+				keys[j] = FREE;
+				i = j;
+			}
+		}
+		return slot;
+	}
+
+	public void clear() {
+		if (size > 0) {
+			Arrays.fill(keys, FREE);
+			size = 0;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[oldKeys.length * 2];
+		values = new int[oldKeys.length * 2];
+		mask = keys.length - 1;
+		Arrays.fill(keys, FREE);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] != FREE) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+
+}
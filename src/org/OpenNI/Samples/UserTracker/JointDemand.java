@@ -0,0 +1,98 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.OpenNI.SkeletonJoint;
+import org.OpenNI.SkeletonProfile;
+
+/**
+ * Joints the consumers of a {@link SensorSession} need. Each consumer declares
+ * its own set; the union, as a {@link Skeleton#mask} of joint bits, is handed
+ * to the frame source with every frame, which fetches and converts only those
+ * joints and tracks with the smallest {@link SkeletonProfile} covering them.
+ * Until a consumer declares anything, every joint of {@link Frame#JOINTS} is
+ * needed. A profile can also be forced, which limits the joints to those it
+ * tracks.
+ */
+public class JointDemand {
+
+	public static final int ALL = Skeleton.mask(Frame.JOINTS);
+	public static final int UPPER = Skeleton.mask(SkeletonJoint.HEAD, SkeletonJoint.NECK, SkeletonJoint.TORSO,
+			SkeletonJoint.LEFT_SHOULDER, SkeletonJoint.LEFT_ELBOW, SkeletonJoint.LEFT_HAND,
+			SkeletonJoint.RIGHT_SHOULDER, SkeletonJoint.RIGHT_ELBOW, SkeletonJoint.RIGHT_HAND);
+	public static final int LOWER = Skeleton.mask(SkeletonJoint.TORSO, SkeletonJoint.LEFT_HIP, SkeletonJoint.LEFT_KNEE,
+			SkeletonJoint.LEFT_FOOT, SkeletonJoint.RIGHT_HIP, SkeletonJoint.RIGHT_KNEE, SkeletonJoint.RIGHT_FOOT);
+	public static final int HEAD_HANDS = Skeleton.mask(SkeletonJoint.HEAD, SkeletonJoint.LEFT_HAND,
+			SkeletonJoint.RIGHT_HAND);
+
+	private final ConcurrentHashMap<Object, Integer> demands = new ConcurrentHashMap<Object, Integer>();
+	private volatile SkeletonProfile forced;
+	private volatile int mask = ALL;
+
+	public void require(Object consumer, SkeletonJoint... joints) {
+		demands.put(consumer, Skeleton.mask(joints));
+		update();
+	}
+
+	public void release(Object consumer) {
+		demands.remove(consumer);
+		update();
+	}
+
+	/** Forces a tracking profile, or returns to choosing it from the declared joints if null. */
+	public void setProfile(SkeletonProfile profile) {
+		forced = profile;
+		update();
+	}
+
+	private synchronized void update() {
+		int union = 0;
+		if (demands.isEmpty()) {
+			union = ALL;
+		} else {
+			for (int joints : demands.values()) {
+				union |= joints;
+			}
+		}
+		SkeletonProfile profile = forced;
+		mask = profile == null ? union : union & jointsOf(profile);
+	}
+
+	/** Joints needed by all consumers. */
+	public int getMask() {
+		return mask;
+	}
+
+	/** Smallest profile tracking every joint of {@code mask}. */
+	public static SkeletonProfile profileFor(int mask) {
+		if (mask == 0) {
+			return SkeletonProfile.NONE;
+		}
+		if ((mask & ~HEAD_HANDS) == 0) {
+			return SkeletonProfile.HEAD_HANDS;
+		}
+		if ((mask & ~UPPER) == 0) {
+			return SkeletonProfile.UPPER;
+		}
+		if ((mask & ~LOWER) == 0) {
+			return SkeletonProfile.LOWER;
+		}
+		return SkeletonProfile.ALL;
+	}
+
+	public static int jointsOf(SkeletonProfile profile) {
+		switch (profile) {
+		case NONE:
+			return 0;
+		case UPPER:
+			return UPPER;
+		case LOWER:
+			return LOWER;
+		case HEAD_HANDS:
+			return HEAD_HANDS;
+		default:
+			return ALL;
+		}
+	}
+
+}
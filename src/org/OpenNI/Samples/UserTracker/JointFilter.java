@@ -0,0 +1,192 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One Euro filter over the packed joints of every tracked user, applied in
+ * place to the real-world and projective positions before bone vectors are
+ * computed. Each coordinate is low-pass filtered with a cutoff that rises with
+ * its speed, so slow jitter is smoothed while fast motion lags little, and
+ * can be extrapolated along its filtered speed to hide pipeline latency.
+ * Joints without depth reset their filter. Per-user state is pooled, so
+ * filtering allocates nothing once the largest number of users has been seen.
+ * <p>
+ * Real-world coordinates and depth are in millimetres, projective x and y in
+ * pixels, so each unit has its own cutoff and speed coefficient. At the usual
+ * 2 m from the sensor a pixel spans about 3.5 mm, which the default pixel
+ * coefficient accounts for.
+ * <p>
+ * With adaptive prediction the joints are extrapolated by the measured age of
+ * the frame when it reaches the filter, from {@link Frame#capturedNanos},
+ * smoothed over frames and capped at {@link #MAX_ADAPTIVE_MILLIS}, plus the
+ * fixed prediction for the stages after it.
+ */
+public class JointFilter implements FrameStage {
+
+	/** Filtered fields of each joint, see {@link Skeleton}. */
+	private static final int FIELDS = Skeleton.CONFIDENCE;
+	private static final float DEFAULT_DT = 1 / 30f;
+	/** Largest latency adaptive prediction extrapolates over. */
+	public static final long MAX_ADAPTIVE_MILLIS = 100;
+	private static final float LATENCY_SMOOTHING = 0.1f;
+
+	private static class State {
+		int userId;
+		long lastSequence;
+		long timestamp;
+		final float[] value = new float[Skeleton.LENGTH];
+		final float[] speed = new float[Skeleton.LENGTH];
+		final boolean[] valid = new boolean[Skeleton.JOINT_COUNT];
+	}
+
+	private final ArrayList<State> states = new ArrayList<State>();
+	private final ArrayList<State> pool = new ArrayList<State>();
+	private final IntSlotMap slots = new IntSlotMap(16);
+	private long sequence;
+	// cutoff and speed coefficient of each filtered field, refreshed every frame
+	private final float[] fieldCutoff = new float[FIELDS];
+	private final float[] fieldBeta = new float[FIELDS];
+	private float latencySeconds;
+
+	private volatile float millimetreCutoff = 1.0f;
+	private volatile float millimetreBeta = 0.01f;
+	private volatile float pixelCutoff = 1.0f;
+	private volatile float pixelBeta = 0.035f;
+	private volatile float speedCutoff = 1.0f;
+	private volatile float predictSeconds;
+	private volatile boolean adaptivePrediction;
+	private volatile float appliedPrediction;
+
+	/**
+	 * Filter of the coordinates in millimetres: cutoff frequency in Hz at rest,
+	 * lower smooths more, and its increase per mm/s of speed, higher lags less
+	 * in fast motion.
+	 */
+	public void setMillimetreFilter(float minCutoff, float beta) {
+		millimetreCutoff = minCutoff;
+		millimetreBeta = beta;
+	}
+
+	/** Filter of the projective coordinates in pixels, like {@link #setMillimetreFilter}. */
+	public void setPixelFilter(float minCutoff, float beta) {
+		pixelCutoff = minCutoff;
+		pixelBeta = beta;
+	}
+
+	/** Cutoff frequency in Hz of the speed estimate. */
+	public void setSpeedCutoff(float hertz) {
+		speedCutoff = hertz;
+	}
+
+	/** How far ahead joints are extrapolated, 0 for none; added to the adaptive prediction. */
+	public void setPrediction(long time, TimeUnit unit) {
+		predictSeconds = unit.toMicros(time) / 1e6f;
+	}
+
+	/** Extrapolates by the measured pipeline latency, see the class comment. */
+	public void setAdaptivePrediction(boolean adaptive) {
+		adaptivePrediction = adaptive;
+	}
+
+	/** Prediction applied to the last frame, in milliseconds. */
+	public float getAppliedPredictionMillis() {
+		return appliedPrediction * 1000;
+	}
+
+	@Override
+	public void process(Frame frame) {
+		sequence++;
+		for (int f = 0; f < FIELDS; ++f) {
+			boolean pixels = f == Skeleton.PROJECTIVE_X || f == Skeleton.PROJECTIVE_Y;
+			fieldCutoff[f] = pixels ? pixelCutoff : millimetreCutoff;
+			fieldBeta[f] = pixels ? pixelBeta : millimetreBeta;
+		}
+		float speedCutoff = this.speedCutoff;
+		float predict = predictSeconds;
+		if (adaptivePrediction && frame.capturedNanos != 0) {
+			float age = (System.nanoTime() - frame.capturedNanos) / 1e9f;
+			latencySeconds += LATENCY_SMOOTHING * (age - latencySeconds);
+			predict += Math.min(latencySeconds, MAX_ADAPTIVE_MILLIS / 1000f);
+		}
+		appliedPrediction = predict;
+		for (int i = 0; i < frame.users.size(); ++i) {
+			Frame.User user = frame.users.get(i);
+			if (user.state != UserState.TRACKING || !user.hasJoints) {
+				continue;
+			}
+			State state = state(user.id);
+			float dt = state.timestamp != 0 && frame.timestamp > state.timestamp
+					? (frame.timestamp - state.timestamp) / 1e6f : DEFAULT_DT;
+			state.timestamp = frame.timestamp;
+			float speedAlpha = alpha(speedCutoff, dt);
+
+			float[] joints = user.joints;
+			for (int j = 0; j < Skeleton.JOINT_COUNT; ++j) {
+				int base = j * Skeleton.STRIDE;
+				if (joints[base + Skeleton.Z] == 0) {
+					state.valid[j] = false;
+					continue;
+				}
+				if (!state.valid[j]) {
+					state.valid[j] = true;
+					for (int f = base; f < base + FIELDS; ++f) {
+						state.value[f] = joints[f];
+						state.speed[f] = 0;
+					}
+					continue;
+				}
+				for (int field = 0; field < FIELDS; ++field) {
+					int f = base + field;
+					float previous = state.value[f];
+					float speed = state.speed[f] + speedAlpha * ((joints[f] - previous) / dt - state.speed[f]);
+					float alpha = alpha(fieldCutoff[field] + fieldBeta[field] * Math.abs(speed), dt);
+					float value = previous + alpha * (joints[f] - previous);
+					state.speed[f] = speed;
+					state.value[f] = value;
+					joints[f] = value + speed * predict;
+				}
+			}
+		}
+		dropLostUsers();
+	}
+
+	private static float alpha(float cutoff, float dt) {
+		float tau = 1 / (2 * (float) Math.PI * cutoff);
+		return 1 / (1 + tau / dt);
+	}
+
+	private State state(int userId) {
+		int slot = slots.get(userId);
+		State state;
+		if (slot >= 0) {
+			state = states.get(slot);
+		} else {
+			state = pool.isEmpty() ? new State() : pool.remove(pool.size() - 1);
+			state.userId = userId;
+			state.timestamp = 0;
+			Arrays.fill(state.valid, false);
+			slots.put(userId, states.size());
+			states.add(state);
+		}
+		state.lastSequence = sequence;
+		return state;
+	}
+
+	private void dropLostUsers() {
+		for (int i = states.size() - 1; i >= 0; --i) {
+			State state = states.get(i);
+			if (state.lastSequence != sequence) {
+				slots.remove(state.userId);
+				State last = states.remove(states.size() - 1);
+				if (last != state) {
+					states.set(i, last);
+					slots.put(last.userId, i);
+				}
+				pool.add(state);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency distribution in nanoseconds with log-linear buckets, in the manner
+ * of HdrHistogram: values below 64 ns are exact, larger ones are kept to
+ * within 1/32 of their value, up to about 18 minutes. Recording is one atomic
+ * increment and is safe from any thread; reading the percentiles or the mean
+ * while values are being recorded gives a consistent enough view for
+ * monitoring.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BITS = 6;
+	private static final int HALF = 1 << (SUB_BITS - 1);
+	private static final long MAX_VALUE = (1L << 40) - 1;
+	static final int BUCKETS = index(MAX_VALUE) + 1;
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+	static int index(long value) {
+		if (value < (1 << SUB_BITS)) {
+			return (int) value;
+		}
+		int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+		return shift * HALF + (int) (value >>> shift);
+	}
+
+	/** Highest value counted in bucket {@code index}. */
+	static long highest(int index) {
+		if (index < (1 << SUB_BITS)) {
+			return index;
+		}
+		int shift = (index >> (SUB_BITS - 1)) - 1;
+		long lowest = (long) (index - shift * HALF) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+
+	public void record(long nanos) {
+		long value = Math.max(0, Math.min(nanos, MAX_VALUE));
+		counts.incrementAndGet(index(value));
+	}
+
+	/** Copies the bucket counts into {@code into}, of length {@link #BUCKETS}. */
+	void copyCounts(long[] into) {
+		for (int i = 0; i < BUCKETS; ++i) {
+			into[i] = counts.get(i);
+		}
+	}
+
+	public long getCount() {
+		long count = 0;
+		for (int i = 0; i < BUCKETS; ++i) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	/** Mean of the recorded values, taking each at the middle of its bucket. */
+	public double getMean() {
+		long[] snapshot = new long[BUCKETS];
+		copyCounts(snapshot);
+		return mean(snapshot);
+	}
+
+	/** Value at or below which {@code percentile} percent of the recorded values fall. */
+	public long getValueAtPercentile(double percentile) {
+		long[] snapshot = new long[BUCKETS];
+		copyCounts(snapshot);
+		return valueAtPercentile(snapshot, percentile);
+	}
+
+	static long count(long[] counts) {
+		long count = 0;
+		for (long c : counts) {
+			count += c;
+		}
+		return count;
+	}
+
+	static double mean(long[] counts) {
+		long count = 0;
+		double sum = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			if (counts[i] != 0) {
+				long lowest = i == 0 ? 0 : highest(i - 1) + 1;
+				sum += counts[i] * ((lowest + highest(i)) / 2.0);
+				count += counts[i];
+			}
+		}
+		return count == 0 ? 0 : sum / count;
+	}
+
+	static long valueAtPercentile(long[] counts, double percentile) {
+		long count = count(counts);
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long seen = 0;
+		for (int i = 0; i < counts.length; ++i) {
+			seen += counts[i];
+			if (seen >= rank) {
+				return highest(i);
+			}
+		}
+		return highest(counts.length - 1);
+	}
+
+}
@@ -0,0 +1,303 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.Arrays;
+
+import org.OpenNI.*;
+
+/**
+ * Frame source backed by a single OpenNI context. Owns the depth and user
+ * generators and leaves the pose detection / calibration flow of new users
+ * to a {@link Calibrator}.
+ * <p>
+ * The centres of mass and joints of all users are converted to projective
+ * coordinates together, in one JNI call per frame, or without JNI at all
+ * through {@link Projection} when pure Java projection is enabled.
+ */
+public class OpenNIFrameSource implements FrameSource
+{
+	class NewUserObserver implements IObserver<UserEventArgs>
+	{
+		@Override
+		public void update(IObservable<UserEventArgs> observable,
+				UserEventArgs args)
+		{
+			calibrator.newUser(args.getId());
+		}
+	}
+	class LostUserObserver implements IObserver<UserEventArgs>
+	{
+		@Override
+		public void update(IObservable<UserEventArgs> observable,
+				UserEventArgs args)
+		{
+			calibrator.lostUser(args.getId());
+		}
+	}
+
+	class CalibrationCompleteObserver implements IObserver<CalibrationProgressEventArgs>
+	{
+		@Override
+		public void update(IObservable<CalibrationProgressEventArgs> observable,
+				CalibrationProgressEventArgs args)
+		{
+			CalibrationProgressStatus status = args.getStatus();
+			calibrator.calibrationComplete(args.getUser(), status == CalibrationProgressStatus.OK,
+					status == CalibrationProgressStatus.MANUAL_ABORT, status.toString());
+		}
+	}
+	class PoseDetectedObserver implements IObserver<PoseDetectionEventArgs>
+	{
+		@Override
+		public void update(IObservable<PoseDetectionEventArgs> observable,
+				PoseDetectionEventArgs args)
+		{
+			calibrator.poseDetected(args.getUser(), args.getPose());
+		}
+	}
+
+	private OutArg<ScriptNode> scriptNode;
+	private Context context;
+	private DepthGenerator depthGen;
+	private UserGenerator userGen;
+	private SkeletonCapability skeletonCap;
+	private PoseDetectionCapability poseDetectionCap;
+	private String calibPose = null;
+	private Calibrator calibrator;
+	private int width, height;
+
+	private static final int COM = -1;
+	/** Calibrations kept for returning users. */
+	private static final int CALIBRATION_SLOTS = 16;
+	private final Projection projection;
+	private boolean pureJavaProjection = false;
+	private SkeletonProfile profile = SkeletonProfile.ALL;
+	// real-world points waiting for conversion, with the user index and joint offset (or COM) they belong to
+	private Point3D[] batch = new Point3D[64];
+	private int batchSize;
+	private int[] batchUser = new int[64];
+	private int[] batchOffset = new int[64];
+	// arrays of exactly n points handed to OpenNI, indexed by n and kept for the next frame with as many
+	private Point3D[][] converted = new Point3D[64][];
+
+	public OpenNIFrameSource(String xmlFile) throws GeneralException
+	{
+		scriptNode = new OutArg<ScriptNode>();
+		context = Context.createFromXmlFile(xmlFile, scriptNode);
+
+		depthGen = DepthGenerator.create(context);
+		DepthMetaData depthMD = depthGen.getMetaData();
+
+		width = depthMD.getFullXRes();
+		height = depthMD.getFullYRes();
+
+		FieldOfView fov = depthGen.getFieldOfView();
+		projection = new Projection(width, height, fov.getHFOV(), fov.getVFOV());
+
+		userGen = UserGenerator.create(context);
+		skeletonCap = userGen.getSkeletonCapability();
+		poseDetectionCap = userGen.getPoseDetectionCapability();
+
+		userGen.getNewUserEvent().addObserver(new NewUserObserver());
+		userGen.getLostUserEvent().addObserver(new LostUserObserver());
+		skeletonCap.getCalibrationCompleteEvent().addObserver(new CalibrationCompleteObserver());
+		poseDetectionCap.getPoseDetectedEvent().addObserver(new PoseDetectedObserver());
+
+		calibPose = skeletonCap.getSkeletonCalibrationPose();
+		calibrator = new Calibrator(skeletonCap, poseDetectionCap, calibPose, projection,
+				new CalibrationCache(CALIBRATION_SLOTS));
+
+		skeletonCap.setSkeletonProfile(profile);
+
+		context.startGeneratingAll();
+	}
+
+	@Override
+	public int getWidth()
+	{
+		return width;
+	}
+
+	@Override
+	public int getHeight()
+	{
+		return height;
+	}
+
+	public DepthGenerator getDepthGenerator()
+	{
+		return depthGen;
+	}
+
+	/** Calibration state of the users and time-to-tracking statistics. */
+	public Calibrator getCalibrator()
+	{
+		return calibrator;
+	}
+
+	/**
+	 * Projects joints and centres of mass in Java from the field of view
+	 * instead of asking OpenNI to convert them.
+	 */
+	public void setPureJavaProjection(boolean pureJavaProjection)
+	{
+		this.pureJavaProjection = pureJavaProjection;
+	}
+
+	@Override
+	public void readFrame(Frame frame) throws GeneralException
+	{
+		PipelineMetrics metrics = frame.metrics;
+		long start = metrics == null ? 0 : metrics.now();
+		context.waitAnyUpdateAll();
+		frame.capturedNanos = System.nanoTime();
+		if (metrics != null)
+		{
+			metrics.record(PipelineMetrics.WAIT, start);
+		}
+
+		DepthMetaData depthMD = depthGen.getMetaData();
+		SceneMetaData sceneMD = userGen.getUserPixels(0);
+
+		// bulk copies out of the native-order direct buffers
+		depthMD.getData().createShortBuffer().get(frame.depth);
+		sceneMD.getData().createShortBuffer().get(frame.scene);
+		frame.timestamp = depthMD.getTimestamp();
+		frame.calibPose = calibPose;
+
+		SkeletonProfile needed = JointDemand.profileFor(frame.requiredJoints);
+		if (needed != profile)
+		{
+			skeletonCap.setSkeletonProfile(needed);
+			profile = needed;
+		}
+
+		start = metrics == null ? 0 : metrics.now();
+		frame.clearUsers();
+		int[] users = userGen.getUsers();
+		for (int i = 0; i < users.length; ++i)
+		{
+			Frame.User user = frame.addUser(users[i]);
+			addToBatch(userGen.getUserCoM(users[i]), i, COM);
+			if (skeletonCap.isSkeletonTracking(users[i]))
+			{
+				user.state = UserState.TRACKING;
+				getJoints(user, i, frame.requiredJoints);
+			}
+			else if (skeletonCap.isSkeletonCalibrating(users[i]))
+			{
+				user.state = UserState.CALIBRATING;
+			}
+		}
+		convertBatch(frame);
+		if (metrics != null)
+		{
+			metrics.record(PipelineMetrics.JOINTS, start);
+		}
+		calibrator.update(frame, System.nanoTime());
+	}
+
+	private void addToBatch(Point3D real, int user, int offset)
+	{
+		int i = batchSize++;
+		if (i == batch.length)
+		{
+			batch = Arrays.copyOf(batch, 2 * i);
+			batchUser = Arrays.copyOf(batchUser, 2 * i);
+			batchOffset = Arrays.copyOf(batchOffset, 2 * i);
+		}
+		batch[i] = real;
+		batchUser[i] = user;
+		batchOffset[i] = offset;
+	}
+
+	private void convertBatch(Frame frame) throws StatusException
+	{
+		int count = batchSize;
+		if (pureJavaProjection)
+		{
+			for (int i = 0; i < count; ++i)
+			{
+				Point3D real = batch[i];
+				storeProjective(frame, i, projection.projectX(real.getX(), real.getZ()),
+						projection.projectY(real.getY(), real.getZ()), real.getZ());
+			}
+		}
+		else if (count > 0)
+		{
+			if (count >= converted.length)
+			{
+				converted = Arrays.copyOf(converted, 2 * count);
+			}
+			Point3D[] points = converted[count];
+			if (points == null)
+			{
+				points = converted[count] = new Point3D[count];
+			}
+			System.arraycopy(batch, 0, points, 0, count);
+			Point3D[] projective = depthGen.convertRealWorldToProjective(points);
+			for (int i = 0; i < count; ++i)
+			{
+				storeProjective(frame, i, projective[i].getX(), projective[i].getY(), projective[i].getZ());
+			}
+		}
+		batchSize = 0;
+	}
+
+	private void storeProjective(Frame frame, int i, float x, float y, float z)
+	{
+		Frame.User user = frame.users.get(batchUser[i]);
+		int offset = batchOffset[i];
+		if (offset == COM)
+		{
+			user.comX = x;
+			user.comY = y;
+			user.comZ = z;
+		}
+		else
+		{
+			user.joints[offset + Skeleton.PROJECTIVE_X] = x;
+			user.joints[offset + Skeleton.PROJECTIVE_Y] = y;
+			user.joints[offset + Skeleton.PROJECTIVE_Z] = z;
+		}
+	}
+
+	private void getJoints(Frame.User user, int index, int required) throws StatusException
+	{
+		float[] joints = user.joints;
+		for (int i = 0; i < Frame.JOINTS.length; ++i)
+		{
+			SkeletonJoint joint = Frame.JOINTS[i];
+			if (!Skeleton.contains(required, joint))
+			{
+				Skeleton.clear(joints, joint);
+				continue;
+			}
+			SkeletonJointPosition pos = skeletonCap.getSkeletonJointPosition(user.id, joint);
+			Point3D real = pos.getPosition();
+			if (real.getZ() == 0)
+			{
+				Skeleton.clear(joints, joint);
+			}
+			else if (pos.getConfidence() > 0)
+			{
+				Skeleton.set(joints, joint, real.getX(), real.getY(), real.getZ(), 0, 0, 0, pos.getConfidence());
+				addToBatch(real, index, Skeleton.offset(joint));
+			}
+			else
+			{
+				// joints the tracker has no confidence in are kept for the bone
+				// features but not worth a round trip through OpenNI
+				Skeleton.set(joints, joint, real.getX(), real.getY(), real.getZ(),
+						projection.projectX(real.getX(), real.getZ()), projection.projectY(real.getY(), real.getZ()),
+						real.getZ(), 0);
+			}
+		}
+		user.hasJoints = true;
+	}
+
+	@Override
+	public void release()
+	{
+		context.dispose();
+	}
+}
@@ -0,0 +1,37 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Management view of {@link PipelineMetrics}. Latencies are in milliseconds
+ * over the last reporting interval, or since start if no reporter runs.
+ */
+public interface PipelineMetricsMXBean {
+
+	String[] getStages();
+
+	double getFramesPerSecond();
+
+	long getFrames();
+
+	/** Frames dropped between pipeline stages. */
+	long getDroppedFrames();
+
+	/** Frames not painted by a view because it was still busy. */
+	long getSkippedFrames();
+
+	int getUsers();
+
+	int getTrackedUsers();
+
+	/** Percentile of the latency of {@code stage} over the last reporting interval, or since the start before the first. */
+	double getPercentileMillis(String stage, double percentile);
+
+	/** Mean latency of {@code stage} over the same interval as {@link #getPercentileMillis(String, double)}. */
+	double getMeanMillis(String stage);
+
+	String getSummary();
+
+	boolean isEnabled();
+
+	void setEnabled(boolean enabled);
+
+}
@@ -0,0 +1,200 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * k-nearest-neighbour classifier of the bone vectors of {@link Frame.User},
+ * over the samples of a {@link PoseDataset} indexed by a {@link PoseIndex}.
+ * As a frame stage it labels every user with bones, within a per-frame time
+ * budget: once the budget is spent, the remaining users keep no pose and are
+ * counted as skipped. Samples can be added while frames are being labelled;
+ * near duplicates of a sample with the same label are dropped and the number
+ * of added samples is capped, so repeated captures of one pose cannot grow
+ * the dataset without bound or outvote the rest of it.
+ */
+public class PoseClassifier implements FrameStage {
+
+	public static final float DEFAULT_MIN_DISTANCE = 10;
+	public static final int DEFAULT_MAX_ADDED = 2000;
+
+	private final PoseDataset dataset;
+	private final PoseIndex index;
+	private final int[] nearest;
+	private final float[] nearestDistance;
+	private int[] votes;
+	private long budgetNanos = Long.MAX_VALUE;
+	private volatile float minDistance = DEFAULT_MIN_DISTANCE;
+	private volatile int maxAdded = DEFAULT_MAX_ADDED;
+	private int added;
+
+	private volatile long frames;
+	private volatile long totalNanos;
+	private volatile long maxNanos;
+	private volatile long lastNanos;
+	private volatile long skipped;
+
+	public PoseClassifier(PoseDataset dataset, int k) {
+		this.dataset = dataset;
+		index = new PoseIndex(dataset);
+		nearest = new int[k];
+		nearestDistance = new float[k];
+		votes = new int[Math.max(1, dataset.getClasses().size())];
+	}
+
+	public PoseDataset getDataset() {
+		return dataset;
+	}
+
+	public void setBudget(long time, TimeUnit unit) {
+		budgetNanos = unit.toNanos(time);
+	}
+
+	/** Index of the most common class among the k nearest samples, -1 if the dataset is empty. */
+	public synchronized int classify(float[] features) {
+		return vote(index.nearest(features, nearest, nearestDistance));
+	}
+
+	/** Closest distance to a sample of the same label at which a new sample is still kept. */
+	public void setMinDistance(float distance) {
+		minDistance = distance;
+	}
+
+	/** Most samples taken through {@link #add(float[], String)}; later ones are dropped. */
+	public void setMaxAdded(int samples) {
+		maxAdded = samples;
+	}
+
+	public int getAdded() {
+		return added;
+	}
+
+	/**
+	 * Adds a labelled sample, used by every later query, and returns true;
+	 * returns false and drops it if a sample of the same label lies within
+	 * {@link #setMinDistance(float) the minimum distance}, or if the cap on
+	 * added samples is reached. The index absorbs new samples without a full
+	 * rebuild per insert.
+	 */
+	public synchronized boolean add(float[] features, String label) {
+		if (added >= maxAdded) {
+			return false;
+		}
+		int found = index.nearest(features, nearest, nearestDistance);
+		for (int i = 0; i < found && nearestDistance[i] < minDistance; ++i) {
+			if (dataset.getClasses().get(dataset.getLabel(nearest[i])).equals(label)) {
+				return false;
+			}
+		}
+		dataset.add(features, label);
+		added++;
+		return true;
+	}
+
+	private int vote(int found) {
+		if (votes.length < dataset.getClasses().size()) {
+			votes = new int[dataset.getClasses().size()];
+		}
+		Arrays.fill(votes, 0);
+		int winner = -1;
+		int winnerVotes = 0;
+		// nearest first, so ties go to the class of the closer samples
+		for (int i = 0; i < found; ++i) {
+			int label = dataset.getLabel(nearest[i]);
+			if (++votes[label] > winnerVotes) {
+				winner = label;
+				winnerVotes = votes[label];
+			}
+		}
+		return winner;
+	}
+
+	public synchronized String label(float[] features) {
+		int index = classify(features);
+		return index < 0 ? null : dataset.getClasses().get(index);
+	}
+
+	@Override
+	public void process(Frame frame) {
+		long start = System.nanoTime();
+		int labelled = 0;
+		for (int i = 0; i < frame.users.size(); ++i) {
+			Frame.User user = frame.users.get(i);
+			user.pose = null;
+			if (!user.hasBones) {
+				continue;
+			}
+			if (labelled > 0 && System.nanoTime() - start > budgetNanos) {
+				skipped++;
+				continue;
+			}
+			user.pose = label(user.bones);
+			labelled++;
+		}
+		long elapsed = System.nanoTime() - start;
+		lastNanos = elapsed;
+		totalNanos += elapsed;
+		maxNanos = Math.max(maxNanos, elapsed);
+		frames++;
+	}
+
+	/** Time spent on the last frame, in nanoseconds. */
+	public long getLastNanos() {
+		return lastNanos;
+	}
+
+	public long getMaxNanos() {
+		return maxNanos;
+	}
+
+	public double getMeanNanos() {
+		long count = frames;
+		return count == 0 ? 0 : (double) totalNanos / count;
+	}
+
+	/** Users left unlabelled because the frame budget was spent. */
+	public long getSkipped() {
+		return skipped;
+	}
+
+	/** Fraction of the samples of {@code test} classified as labelled. */
+	public synchronized double evaluate(PoseDataset test) {
+		if (test.size() == 0) {
+			return 0;
+		}
+		float[] sample = new float[PoseDataset.DIMENSIONS];
+		int correct = 0;
+		for (int s = 0; s < test.size(); ++s) {
+			System.arraycopy(test.getFeatures(), s * PoseDataset.DIMENSIONS, sample, 0, PoseDataset.DIMENSIONS);
+			int label = classify(sample);
+			if (label >= 0 && dataset.getClasses().get(label).equals(test.getClasses().get(test.getLabel(s)))) {
+				correct++;
+			}
+		}
+		return (double) correct / test.size();
+	}
+
+	/**
+	 * Prints accuracy and classification latency on a held-out split of an
+	 * ARFF file: {@code <file.arff> [k] [test fraction]}.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: PoseClassifier <file.arff> [k] [test fraction]");
+			System.exit(2);
+		}
+		int k = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		double testFraction = args.length > 2 ? Double.parseDouble(args[2]) : 0.2;
+
+		PoseDataset[] split = PoseDataset.load(new File(args[0])).split(testFraction, 1);
+		PoseClassifier classifier = new PoseClassifier(split[0], k);
+		long start = System.nanoTime();
+		double accuracy = classifier.evaluate(split[1]);
+		long elapsed = System.nanoTime() - start;
+		System.out.printf("train=%d test=%d k=%d accuracy=%.3f latency=%.1fus/sample%n", split[0].size(),
+				split[1].size(), k, accuracy, split[1].size() == 0 ? 0 : elapsed / 1000.0 / split[1].size());
+	}
+
+}
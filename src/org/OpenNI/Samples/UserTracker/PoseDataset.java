@@ -0,0 +1,159 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Labelled bone-vector samples, as recorded by {@link ArffWriter}. Features
+ * are kept in one flat array, {@link #DIMENSIONS} floats per sample, and
+ * labels as indexes into {@link #getClasses()}.
+ */
+public class PoseDataset {
+
+	public static final int DIMENSIONS = ArffWriter.ROW_LENGTH;
+
+	private final List<String> classes = new ArrayList<String>();
+	private float[] features;
+	private int[] labels;
+	private int size;
+
+	public PoseDataset() {
+		this(64);
+	}
+
+	public PoseDataset(int capacity) {
+		features = new float[Math.max(1, capacity) * DIMENSIONS];
+		labels = new int[Math.max(1, capacity)];
+	}
+
+	/**
+	 * Reads the samples of an ARFF file. The classes are taken from the
+	 * nominal attribute declared last, in declaration order; labels not
+	 * declared there are added as they are found.
+	 */
+	public static PoseDataset load(File file) throws IOException {
+		PoseDataset dataset = new PoseDataset(1024);
+		BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII));
+		try {
+			boolean data = false;
+			float[] row = new float[DIMENSIONS];
+			int lineNumber = 0;
+			String line;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("%")) {
+					continue;
+				}
+				if (!data) {
+					String lower = line.toLowerCase();
+					if (lower.startsWith("@data")) {
+						data = true;
+					} else if (lower.startsWith("@attribute") && line.indexOf('{') >= 0) {
+						dataset.classes.clear();
+						String values = line.substring(line.indexOf('{') + 1, line.lastIndexOf('}'));
+						for (String value : values.split(",")) {
+							dataset.classIndex(value.trim());
+						}
+					}
+					continue;
+				}
+				String[] fields = line.split(",");
+				if (fields.length != DIMENSIONS + 1) {
+					throw new IOException(file + ":" + lineNumber + ": expected " + (DIMENSIONS + 1) + " values");
+				}
+				try {
+					for (int i = 0; i < DIMENSIONS; ++i) {
+						row[i] = Float.parseFloat(fields[i]);
+					}
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ":" + lineNumber + ": " + e.getMessage());
+				}
+				dataset.add(row, fields[DIMENSIONS].trim());
+			}
+		} finally {
+			in.close();
+		}
+		return dataset;
+	}
+
+	/** Index of a class, added if it is new. */
+	public int classIndex(String label) {
+		int index = classes.indexOf(label);
+		if (index < 0) {
+			index = classes.size();
+			classes.add(label);
+		}
+		return index;
+	}
+
+	public List<String> getClasses() {
+		return classes;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** Features of all samples, {@link #DIMENSIONS} per sample; only the first {@link #size()} are valid. */
+	public float[] getFeatures() {
+		return features;
+	}
+
+	public int getLabel(int sample) {
+		return labels[sample];
+	}
+
+	public int add(float[] sample, String label) {
+		return add(sample, classIndex(label));
+	}
+
+	/** Appends a sample and returns its index. */
+	public int add(float[] sample, int label) {
+		if (size == labels.length) {
+			labels = Arrays.copyOf(labels, 2 * size);
+			features = Arrays.copyOf(features, 2 * size * DIMENSIONS);
+		}
+		System.arraycopy(sample, 0, features, size * DIMENSIONS, DIMENSIONS);
+		labels[size] = label;
+		return size++;
+	}
+
+	/**
+	 * Splits the samples at random into a training set and a test set holding
+	 * about {@code testFraction} of them. Both keep the class list of this set.
+	 */
+	public PoseDataset[] split(double testFraction, long seed) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; ++i) {
+			order[i] = i;
+		}
+		Random random = new Random(seed);
+		for (int i = size - 1; i > 0; --i) {
+			int j = random.nextInt(i + 1);
+			int t = order[i];
+			order[i] = order[j];
+			order[j] = t;
+		}
+		int testSize = (int) Math.round(size * testFraction);
+		PoseDataset train = new PoseDataset(size - testSize);
+		PoseDataset test = new PoseDataset(testSize);
+		train.classes.addAll(classes);
+		test.classes.addAll(classes);
+		float[] sample = new float[DIMENSIONS];
+		for (int i = 0; i < size; ++i) {
+			System.arraycopy(features, order[i] * DIMENSIONS, sample, 0, DIMENSIONS);
+			(i < testSize ? test : train).add(sample, labels[order[i]]);
+		}
+		return new PoseDataset[] { train, test };
+	}
+
+}
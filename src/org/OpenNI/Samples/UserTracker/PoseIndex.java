@@ -0,0 +1,298 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Vantage-point tree over the flat feature array of a {@link PoseDataset},
+ * for k-nearest and radius queries by Euclidean distance. The tree is a
+ * permutation of sample indexes: the node of range {@code [lo, hi)} has its
+ * vantage point at {@code lo}, the samples within its median distance in
+ * {@code [lo + 1, mid)} and the rest in {@code [mid, hi)}, so it needs no node
+ * objects. Samples added to the dataset after the last build are scanned
+ * linearly. Once they make up an eighth of the tree, a new tree is built on a
+ * background thread and swapped in when complete, so a query never waits for
+ * a build.
+ * <p>
+ * Queries are meant for one thread at a time, like {@link PoseClassifier}
+ * makes them; samples may only be appended to the dataset.
+ */
+public class PoseIndex {
+
+	private static final int LEAF_SIZE = 8;
+	private static final int MIN_REBUILD = 64;
+
+	/** Tree over the first {@code size} samples, never changed once built. */
+	private static final class Tree {
+		final int[] order;
+		final float[] threshold;
+		final int size;
+
+		Tree(float[] data, int size) {
+			this.order = new int[size];
+			this.threshold = new float[size];
+			this.size = size;
+			for (int i = 0; i < size; ++i) {
+				order[i] = i;
+			}
+			new Builder(data, order, threshold).build(0, size);
+		}
+	}
+
+	private static final class Builder {
+		final float[] data;
+		final int[] order;
+		final float[] threshold;
+		final float[] scratch;
+
+		Builder(float[] data, int[] order, float[] threshold) {
+			this.data = data;
+			this.order = order;
+			this.threshold = threshold;
+			this.scratch = new float[order.length];
+		}
+
+		void build(int lo, int hi) {
+			while (hi - lo > LEAF_SIZE) {
+				int vantage = order[lo];
+				for (int i = lo + 1; i < hi; ++i) {
+					scratch[i] = distance(data, vantage, data, order[i] * PoseDataset.DIMENSIONS);
+				}
+				int mid = (lo + 1 + hi) >>> 1;
+				select(lo + 1, hi - 1, mid);
+				threshold[lo] = scratch[mid];
+				build(lo + 1, mid);
+				lo = mid;
+			}
+		}
+
+		/** Partially sorts {@code order} and {@code scratch} by distance so that position {@code n} holds the median. */
+		private void select(int left, int right, int n) {
+			while (left < right) {
+				float pivot = scratch[(left + right) >>> 1];
+				int i = left, j = right;
+				while (i <= j) {
+					while (scratch[i] < pivot) {
+						i++;
+					}
+					while (scratch[j] > pivot) {
+						j--;
+					}
+					if (i <= j) {
+						swap(i++, j--);
+					}
+				}
+				if (n <= j) {
+					right = j;
+				} else if (n >= i) {
+					left = i;
+				} else {
+					return;
+				}
+			}
+		}
+
+		private void swap(int i, int j) {
+			int o = order[i];
+			order[i] = order[j];
+			order[j] = o;
+			float s = scratch[i];
+			scratch[i] = scratch[j];
+			scratch[j] = s;
+		}
+	}
+
+	private final PoseDataset dataset;
+	private volatile Tree tree;
+	private volatile boolean building;
+	private volatile long backgroundBuilds;
+
+	// query state
+	private int[] order;
+	private float[] threshold;
+	private float[] query;
+	private int k;
+	private int found;
+	private int[] resultIndex;
+	private float[] resultDistance;
+	private float radius;
+
+	public PoseIndex(PoseDataset dataset) {
+		this.dataset = dataset;
+		rebuild();
+	}
+
+	public PoseDataset getDataset() {
+		return dataset;
+	}
+
+	/** Number of samples in the tree; the rest of the dataset is scanned linearly. */
+	public int getIndexed() {
+		return tree.size;
+	}
+
+	/** Trees built in the background so far. */
+	public long getBackgroundBuilds() {
+		return backgroundBuilds;
+	}
+
+	/** Rebuilds the tree over every sample of the dataset, on the calling thread. */
+	public void rebuild() {
+		tree = new Tree(dataset.getFeatures(), dataset.size());
+	}
+
+	/** Starts a background build once enough samples are scanned linearly. */
+	private void update(Tree current) {
+		final int size = dataset.size();
+		int pending = size - current.size;
+		if (building || pending <= MIN_REBUILD || pending <= current.size / 8) {
+			return;
+		}
+		building = true;
+		// samples below size are never changed, and a grown dataset copies them to a new array
+		final float[] data = dataset.getFeatures();
+		Thread builder = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Tree built = new Tree(data, size);
+					if (built.size > tree.size) {
+						tree = built;
+					}
+					backgroundBuilds++;
+				} finally {
+					building = false;
+				}
+			}
+		}, "pose-index");
+		builder.setDaemon(true);
+		builder.setPriority(Thread.MIN_PRIORITY);
+		builder.start();
+	}
+
+	private static float distance(float[] data, int sample, float[] other, int offset) {
+		int base = sample * PoseDataset.DIMENSIONS;
+		float sum = 0;
+		for (int i = 0; i < PoseDataset.DIMENSIONS; ++i) {
+			float d = data[base + i] - other[offset + i];
+			sum += d * d;
+		}
+		return (float) Math.sqrt(sum);
+	}
+
+	/**
+	 * Finds the {@code indexes.length} nearest samples to {@code query}, nearest
+	 * first, with their distances. Returns how many were found.
+	 */
+	public int nearest(float[] query, int[] indexes, float[] distances) {
+		Tree current = tree;
+		update(current);
+		this.order = current.order;
+		this.threshold = current.threshold;
+		this.query = query;
+		this.k = indexes.length;
+		this.resultIndex = indexes;
+		this.resultDistance = distances;
+		this.found = 0;
+		this.radius = Float.MAX_VALUE;
+		float[] data = dataset.getFeatures();
+		if (k > 0) {
+			searchNearest(data, 0, current.size);
+			for (int s = current.size; s < dataset.size(); ++s) {
+				offerNearest(s, distance(data, s, query, 0));
+			}
+		}
+		this.query = null;
+		return found;
+	}
+
+	private void searchNearest(float[] data, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; ++i) {
+				offerNearest(order[i], distance(data, order[i], query, 0));
+			}
+			return;
+		}
+		int mid = (lo + 1 + hi) >>> 1;
+		float d = distance(data, order[lo], query, 0);
+		offerNearest(order[lo], d);
+		float mu = threshold[lo];
+		if (d < mu) {
+			searchNearest(data, lo + 1, mid);
+			if (d + radius >= mu) {
+				searchNearest(data, mid, hi);
+			}
+		} else {
+			searchNearest(data, mid, hi);
+			if (d - radius <= mu) {
+				searchNearest(data, lo + 1, mid);
+			}
+		}
+	}
+
+	private void offerNearest(int sample, float distance) {
+		if (found == k && distance >= resultDistance[k - 1]) {
+			return;
+		}
+		int pos = found < k ? found++ : k - 1;
+		while (pos > 0 && resultDistance[pos - 1] > distance) {
+			resultIndex[pos] = resultIndex[pos - 1];
+			resultDistance[pos] = resultDistance[pos - 1];
+			pos--;
+		}
+		resultIndex[pos] = sample;
+		resultDistance[pos] = distance;
+		if (found == k) {
+			radius = resultDistance[k - 1];
+		}
+	}
+
+	/**
+	 * Finds the samples within {@code radius} of {@code query}, in no particular
+	 * order. Stores up to {@code indexes.length} of them and returns how many
+	 * there are in total.
+	 */
+	public int withinRadius(float[] query, float radius, int[] indexes) {
+		Tree current = tree;
+		update(current);
+		this.order = current.order;
+		this.threshold = current.threshold;
+		this.query = query;
+		this.radius = radius;
+		this.resultIndex = indexes;
+		this.found = 0;
+		float[] data = dataset.getFeatures();
+		searchRadius(data, 0, current.size);
+		for (int s = current.size; s < dataset.size(); ++s) {
+			offerRadius(s, distance(data, s, query, 0));
+		}
+		this.query = null;
+		return found;
+	}
+
+	private void searchRadius(float[] data, int lo, int hi) {
+		if (hi - lo <= LEAF_SIZE) {
+			for (int i = lo; i < hi; ++i) {
+				offerRadius(order[i], distance(data, order[i], query, 0));
+			}
+			return;
+		}
+		int mid = (lo + 1 + hi) >>> 1;
+		float d = distance(data, order[lo], query, 0);
+		offerRadius(order[lo], d);
+		float mu = threshold[lo];
+		if (d - radius <= mu) {
+			searchRadius(data, lo + 1, mid);
+		}
+		if (d + radius >= mu) {
+			searchRadius(data, mid, hi);
+		}
+	}
+
+	private void offerRadius(int sample, float distance) {
+		if (distance <= radius) {
+			if (found < resultIndex.length) {
+				resultIndex[found] = sample;
+			}
+			found++;
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Pure Java real-world to projective conversion from the depth generator's
+ * resolution and field of view, the same pinhole model OpenNI uses, so joints
+ * can be projected without a JNI call per point.
+ */
+public class Projection {
+
+	/** Field of view of the Xtion / Kinect depth camera, in radians. */
+	public static final double DEFAULT_HFOV = Math.toRadians(58);
+	public static final double DEFAULT_VFOV = Math.toRadians(45);
+
+	private final float halfX, halfY;
+	private final float coeffX, coeffY;
+
+	public Projection(int xRes, int yRes, double hFov, double vFov) {
+		halfX = xRes / 2f;
+		halfY = yRes / 2f;
+		coeffX = (float) (xRes / (Math.tan(hFov / 2) * 2));
+		coeffY = (float) (yRes / (Math.tan(vFov / 2) * 2));
+	}
+
+	public float projectX(float x, float z) {
+		return z == 0 ? 0 : coeffX * x / z + halfX;
+	}
+
+	public float projectY(float y, float z) {
+		return z == 0 ? 0 : halfY - coeffY * y / z;
+	}
+
+	public float realX(float projectiveX, float z) {
+		return (projectiveX - halfX) * z / coeffX;
+	}
+
+	public float realY(float projectiveY, float z) {
+		return (halfY - projectiveY) * z / coeffY;
+	}
+
+	/**
+	 * Fills the projective position of every joint of a packed skeleton that
+	 * has a real-world depth.
+	 */
+	public void toProjective(float[] joints) {
+		for (int i = 0; i < joints.length; i += Skeleton.STRIDE) {
+			float z = joints[i + Skeleton.Z];
+			if (z != 0) {
+				joints[i + Skeleton.PROJECTIVE_X] = projectX(joints[i + Skeleton.X], z);
+				joints[i + Skeleton.PROJECTIVE_Y] = projectY(joints[i + Skeleton.Y], z);
+				joints[i + Skeleton.PROJECTIVE_Z] = z;
+			}
+		}
+	}
+
+}
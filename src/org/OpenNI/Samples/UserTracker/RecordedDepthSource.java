@@ -0,0 +1,164 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.OpenNI.GeneralException;
+
+/**
+ * Frame source streaming back the depth and label maps written by
+ * {@link DepthRecorder}, as fast as frames are read, so depth processing can
+ * be tested and benchmarked without a sensor. The users are rebuilt from the
+ * label map, with their centres of mass but no joints, as users the sensor
+ * still looks for a pose of. After the last frame the stream is reopened and
+ * starts again.
+ */
+public class RecordedDepthSource implements FrameSource {
+
+	private final File file;
+	private final int width, height;
+	private final short[] depth;
+	private final DepthCodec.Reader reader = new DepthCodec.Reader();
+	// pixels and coordinate sums per label while rebuilding the users
+	private final int[] pixels = new int[UserRegions.LABELS];
+	private final int[] depthPixels = new int[UserRegions.LABELS];
+	private final long[] sumX = new long[UserRegions.LABELS];
+	private final long[] sumY = new long[UserRegions.LABELS];
+	private final long[] sumZ = new long[UserRegions.LABELS];
+	private DataInputStream in;
+	private long frameNumber;
+
+	public RecordedDepthSource(File file) throws IOException {
+		this.file = file;
+		in = open();
+		width = in.readInt();
+		height = in.readInt();
+		depth = new short[width * height];
+		reader.data = new byte[width * height];
+	}
+
+	private DataInputStream open() throws IOException {
+		DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256 * 1024));
+		try {
+			if (stream.readInt() != DepthCodec.MAGIC || stream.readInt() != DepthCodec.VERSION) {
+				throw new IOException(file + " is not a depth recording");
+			}
+		} catch (IOException e) {
+			stream.close();
+			throw e;
+		}
+		return stream;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	/** Number of frames read since the source was created. */
+	public long getFrameNumber() {
+		return frameNumber;
+	}
+
+	@Override
+	public void readFrame(Frame frame) throws GeneralException {
+		try {
+			int flags;
+			try {
+				flags = in.readInt();
+			} catch (EOFException e) {
+				rewind();
+				flags = in.readInt();
+			}
+			frame.timestamp = in.readLong();
+			int depthLength = in.readInt();
+			int sceneLength = in.readInt();
+
+			if ((flags & DepthCodec.KEY_FRAME) != 0) {
+				Arrays.fill(depth, (short) 0);
+			}
+			read(depthLength);
+			DepthCodec.decodeDelta(reader, depth);
+			System.arraycopy(depth, 0, frame.depth, 0, depth.length);
+			read(sceneLength);
+			DepthCodec.decodeRuns(reader, frame.scene);
+		} catch (IOException e) {
+			throw new GeneralException(file + ": " + e.getMessage());
+		}
+		addUsers(frame);
+		frame.calibPose = null;
+		frameNumber++;
+	}
+
+	/** Adds a user for every label of the label map, in the order of the ids. */
+	private void addUsers(Frame frame) {
+		Arrays.fill(pixels, 0);
+		Arrays.fill(depthPixels, 0);
+		Arrays.fill(sumX, 0);
+		Arrays.fill(sumY, 0);
+		Arrays.fill(sumZ, 0);
+		short[] scene = frame.scene;
+		short[] depth = frame.depth;
+		for (int y = 0, pos = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x, ++pos) {
+				int label = scene[pos];
+				if (label <= 0 || label >= UserRegions.LABELS) {
+					continue;
+				}
+				pixels[label]++;
+				sumX[label] += x;
+				sumY[label] += y;
+				if (depth[pos] != 0) {
+					depthPixels[label]++;
+					sumZ[label] += depth[pos];
+				}
+			}
+		}
+		frame.clearUsers();
+		for (int label = 1; label < UserRegions.LABELS; ++label) {
+			if (pixels[label] == 0) {
+				continue;
+			}
+			Frame.User user = frame.addUser(label);
+			user.comX = (float) sumX[label] / pixels[label];
+			user.comY = (float) sumY[label] / pixels[label];
+			user.comZ = depthPixels[label] == 0 ? 0 : (float) sumZ[label] / depthPixels[label];
+		}
+	}
+
+	private void read(int length) throws IOException {
+		if (reader.data.length < length) {
+			reader.data = new byte[length];
+		}
+		in.readFully(reader.data, 0, length);
+		reader.pos = 0;
+		reader.limit = length;
+	}
+
+	private void rewind() throws IOException {
+		in.close();
+		in = open();
+		in.readInt();
+		in.readInt();
+	}
+
+	@Override
+	public void release() {
+		try {
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,97 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.OpenNI.SkeletonJoint;
+
+/**
+ * Frame source replaying a {@link SkeletonRecording} as fast as frames are
+ * read, so recorded sessions can be run through the skeleton and gesture code
+ * without a sensor. Every user is reported as tracked, with the projective
+ * joints derived from the default field of view and the torso as centre of
+ * mass. The depth and label maps are left empty. After the last frame the
+ * replay starts again from the first one.
+ */
+public class RecordedSkeletonSource implements FrameSource {
+
+	private static final int TORSO = Skeleton.offset(SkeletonJoint.TORSO);
+
+	private final SkeletonRecording recording;
+	private final Projection projection;
+	private final int frameCount;
+	private int frameNumber;
+	private int record;
+
+	public RecordedSkeletonSource(File file) throws IOException {
+		recording = new SkeletonRecording(file);
+		projection = new Projection(recording.getWidth(), recording.getHeight(),
+				Projection.DEFAULT_HFOV, Projection.DEFAULT_VFOV);
+		frameCount = recording.getFrameCount();
+	}
+
+	public SkeletonRecording getRecording() {
+		return recording;
+	}
+
+	@Override
+	public int getWidth() {
+		return recording.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return recording.getHeight();
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	/** Number of the next frame {@link #readFrame(Frame)} will produce. */
+	public int getPosition() {
+		return frameNumber;
+	}
+
+	public void seek(int frame) {
+		frameNumber = Math.max(0, Math.min(frame, frameCount));
+		record = recording.findFrame(frameNumber);
+	}
+
+	@Override
+	public void readFrame(Frame frame) {
+		if (frameNumber >= frameCount) {
+			seek(0);
+		}
+		frame.clearUsers();
+		frame.timestamp = 0;
+		int size = recording.size();
+		while (record < size && recording.getFrame(record) == frameNumber) {
+			frame.timestamp = recording.getTimestamp(record);
+			if (recording.getUserId(record) == SkeletonRecording.NO_USER) {
+				record++;
+				continue;
+			}
+			Frame.User user = frame.addUser(recording.getUserId(record));
+			user.state = UserState.TRACKING;
+			recording.readJoints(record, user.joints, projection, frame.requiredJoints);
+			user.hasJoints = true;
+			user.comX = user.joints[TORSO + Skeleton.PROJECTIVE_X];
+			user.comY = user.joints[TORSO + Skeleton.PROJECTIVE_Y];
+			user.comZ = user.joints[TORSO + Skeleton.PROJECTIVE_Z];
+			record++;
+		}
+		frame.calibPose = null;
+		frameNumber++;
+	}
+
+	@Override
+	public void release() {
+		try {
+			recording.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
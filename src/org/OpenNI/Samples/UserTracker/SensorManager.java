@@ -0,0 +1,507 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.OpenNI.GeneralException;
+import org.OpenNI.SkeletonJoint;
+
+/**
+ * Runs several sensors in one process and merges their users into one world
+ * frame. Every sensor has its own {@link SensorSession} and
+ * {@link FramePipeline}, so sensors share no locks on the frame path and scale
+ * with the number of cores. After each sensor frame the tracked users are
+ * moved into world coordinates with the sensor's {@link Extrinsics}; a merge
+ * thread then groups the latest users of all sensors whose torsos lie within
+ * the merge distance, at most one per sensor, into a single
+ * {@link WorldFrame.User} and keeps its id from merge to merge by proximity.
+ * Users last seen longer than the maximum age ago, by a sensor that stalled
+ * or stopped, are left out of the merge.
+ */
+public class SensorManager {
+
+	private static final int TORSO = Skeleton.offset(SkeletonJoint.TORSO);
+
+	/** A tracked user of one sensor, in world coordinates. */
+	private static class Observation {
+		int sensor;
+		/** {@code System.nanoTime()} of the capture of the frame this user was seen in. */
+		long captured;
+		final float[] position = new float[3];
+		final float[] joints = new float[Skeleton.LENGTH];
+		String pose;
+
+		void copy(Observation other) {
+			sensor = other.sensor;
+			captured = other.captured;
+			System.arraycopy(other.position, 0, position, 0, 3);
+			System.arraycopy(other.joints, 0, joints, 0, Skeleton.LENGTH);
+			pose = other.pose;
+		}
+	}
+
+	public class Sensor implements FrameListener {
+
+		private final String name;
+		private final int index;
+		private final SensorSession session;
+		private final Extrinsics extrinsics;
+		private final ArrayList<Observation> latest = new ArrayList<Observation>();
+		private int latestCount;
+		private FramePipeline pipeline;
+		private volatile long frames;
+
+		Sensor(String name, int index, SensorSession session, Extrinsics extrinsics) {
+			this.name = name;
+			this.index = index;
+			this.session = session;
+			this.extrinsics = extrinsics;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public SensorSession getSession() {
+			return session;
+		}
+
+		public FramePipeline getPipeline() {
+			return pipeline;
+		}
+
+		public long getFrames() {
+			return frames;
+		}
+
+		@Override
+		public void frameReady(Frame frame) {
+			long captured = frame.capturedNanos != 0 ? frame.capturedNanos : System.nanoTime();
+			synchronized (this) {
+				latestCount = 0;
+				for (int i = 0; i < frame.users.size(); ++i) {
+					Frame.User user = frame.users.get(i);
+					if (user.state == UserState.TRACKING && user.hasJoints) {
+						if (latestCount == latest.size()) {
+							latest.add(new Observation());
+						}
+						Observation observation = latest.get(latestCount);
+						observation.captured = captured;
+						if (toWorld(user, observation)) {
+							latestCount++;
+						}
+					}
+				}
+			}
+			frames++;
+			requestMerge();
+		}
+
+		/** Moves {@code user} into world coordinates; false if none of its joints is confident. */
+		private boolean toWorld(Frame.User user, Observation observation) {
+			observation.sensor = index;
+			observation.pose = user.pose;
+			float[] joints = user.joints;
+			float[] world = observation.joints;
+			float sumX = 0, sumY = 0, sumZ = 0;
+			int present = 0;
+			for (int j = 0; j < Frame.JOINTS.length; ++j) {
+				int base = Skeleton.offset(Frame.JOINTS[j]);
+				float confidence = joints[base + Skeleton.CONFIDENCE];
+				if (confidence > 0) {
+					extrinsics.apply(joints[base + Skeleton.X], joints[base + Skeleton.Y], joints[base + Skeleton.Z],
+							world, base);
+					sumX += world[base];
+					sumY += world[base + 1];
+					sumZ += world[base + 2];
+					present++;
+				} else {
+					world[base] = world[base + 1] = world[base + 2] = 0;
+				}
+				world[base + Skeleton.CONFIDENCE] = confidence;
+			}
+			if (present == 0) {
+				return false;
+			}
+			float[] position = observation.position;
+			if (world[TORSO + Skeleton.CONFIDENCE] > 0) {
+				position[0] = world[TORSO];
+				position[1] = world[TORSO + 1];
+				position[2] = world[TORSO + 2];
+			} else {
+				position[0] = sumX / present;
+				position[1] = sumY / present;
+				position[2] = sumZ / present;
+			}
+			return true;
+		}
+
+		/**
+		 * Appends the latest users of this sensor captured after {@code oldest}
+		 * to {@code into} from {@code count} on, returns the new count.
+		 */
+		synchronized int copyTo(ArrayList<Observation> into, int count, long oldest) {
+			for (int i = 0; i < latestCount; ++i) {
+				Observation observation = latest.get(i);
+				if (observation.captured - oldest < 0) {
+					continue;
+				}
+				if (count == into.size()) {
+					into.add(new Observation());
+				}
+				into.get(count++).copy(observation);
+			}
+			return count;
+		}
+
+		@Override
+		public String toString() {
+			return name + "[frames=" + frames + " " + (pipeline == null ? "stopped" : pipeline.toString()) + "]";
+		}
+	}
+
+	private final CopyOnWriteArrayList<Sensor> sensors = new CopyOnWriteArrayList<Sensor>();
+	private final CopyOnWriteArrayList<WorldListener> listeners = new CopyOnWriteArrayList<WorldListener>();
+	private volatile float mergeDistance = 400;
+	private volatile long maxAgeNanos = TimeUnit.MILLISECONDS.toNanos(500);
+
+	// merge state, owned by whoever holds the manager's lock
+	private final ArrayList<Observation> observations = new ArrayList<Observation>();
+	private int[] members = new int[16];
+	private float[] clusterX = new float[16], clusterY = new float[16], clusterZ = new float[16];
+	private int[] clusterSize = new int[16];
+	private long[] clusterSensors = new long[16];
+	private int[] previousId = new int[16];
+	private float[] previousX = new float[16], previousY = new float[16], previousZ = new float[16];
+	private boolean[] previousTaken = new boolean[16];
+	private int previousCount;
+	private int nextId = 1;
+	private final WorldFrame world = new WorldFrame();
+
+	private final Object mergeLock = new Object();
+	private boolean mergeRequested;
+	private volatile boolean running;
+	private Thread mergeThread;
+
+	/** Adds a sensor; must be called before {@link #start(int)}. At most 64 sensors. */
+	public Sensor addSensor(String name, SensorSession session, Extrinsics extrinsics) {
+		if (sensors.size() == 64) {
+			throw new IllegalStateException("too many sensors");
+		}
+		Sensor sensor = new Sensor(name, sensors.size(), session, extrinsics);
+		sensors.add(sensor);
+		session.addListener(sensor);
+		return sensor;
+	}
+
+	public List<Sensor> getSensors() {
+		return sensors;
+	}
+
+	public void addListener(WorldListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(WorldListener listener) {
+		listeners.remove(listener);
+	}
+
+	/** Largest distance between the torsos of users of different sensors taken as the same person, in mm. */
+	public void setMergeDistance(float millimetres) {
+		mergeDistance = millimetres;
+	}
+
+	/** Age beyond which the users of a sensor are no longer merged, 500 ms by default. */
+	public void setMaxAge(long age, TimeUnit unit) {
+		maxAgeNanos = unit.toNanos(age);
+	}
+
+	public synchronized void start(int queueCapacity) {
+		if (running) {
+			return;
+		}
+		running = true;
+		mergeThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				mergeLoop();
+			}
+		}, "sensor-merge");
+		mergeThread.setDaemon(true);
+		mergeThread.start();
+		for (Sensor sensor : sensors) {
+			sensor.pipeline = new FramePipeline(sensor.session, queueCapacity);
+			sensor.pipeline.start();
+		}
+	}
+
+	/** Stops all pipelines and the merge thread and releases the sensors. */
+	public void stop() {
+		synchronized (this) {
+			if (!running) {
+				return;
+			}
+			running = false;
+		}
+		for (Sensor sensor : sensors) {
+			sensor.pipeline.stop();
+			sensor.pipeline = null;
+			sensor.session.release();
+		}
+		requestMerge();
+		try {
+			mergeThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void requestMerge() {
+		synchronized (mergeLock) {
+			mergeRequested = true;
+			mergeLock.notify();
+		}
+	}
+
+	private void mergeLoop() {
+		while (true) {
+			synchronized (mergeLock) {
+				while (!mergeRequested && running) {
+					try {
+						mergeLock.wait();
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				mergeRequested = false;
+			}
+			if (!running) {
+				return;
+			}
+			merge();
+		}
+	}
+
+	/** Merges the latest users of every sensor and notifies the listeners. */
+	synchronized void merge() {
+		int count = 0;
+		long oldest = System.nanoTime() - maxAgeNanos;
+		for (Sensor sensor : sensors) {
+			count = sensor.copyTo(observations, count, oldest);
+		}
+		int clusters = cluster(count);
+
+		world.users.clear();
+		world.sequence++;
+		Arrays.fill(previousTaken, 0, previousCount, false);
+		for (int c = 0; c < clusters; ++c) {
+			WorldFrame.User user = world.addUser();
+			user.x = clusterX[c];
+			user.y = clusterY[c];
+			user.z = clusterZ[c];
+			user.sensors = Long.bitCount(clusterSensors[c]);
+			user.id = matchId(user);
+			fuse(user, c, count);
+		}
+		previousCount = world.users.size();
+		ensurePrevious(previousCount);
+		for (int c = 0; c < previousCount; ++c) {
+			WorldFrame.User user = world.users.get(c);
+			previousId[c] = user.id;
+			previousX[c] = user.x;
+			previousY[c] = user.y;
+			previousZ[c] = user.z;
+		}
+
+		for (WorldListener listener : listeners) {
+			listener.worldUpdated(world);
+		}
+	}
+
+	/** Assigns every observation to a cluster, greedily; returns the number of clusters. */
+	private int cluster(int count) {
+		if (members.length < count) {
+			int size = Math.max(count, 2 * members.length);
+			members = new int[size];
+			clusterX = new float[size];
+			clusterY = new float[size];
+			clusterZ = new float[size];
+			clusterSize = new int[size];
+			clusterSensors = new long[size];
+		}
+		float limit = mergeDistance * mergeDistance;
+		int clusters = 0;
+		for (int i = 0; i < count; ++i) {
+			Observation o = observations.get(i);
+			long bit = 1L << o.sensor;
+			int best = -1;
+			float bestDistance = limit;
+			for (int c = 0; c < clusters; ++c) {
+				if ((clusterSensors[c] & bit) != 0) {
+					continue;
+				}
+				float dx = clusterX[c] - o.position[0];
+				float dy = clusterY[c] - o.position[1];
+				float dz = clusterZ[c] - o.position[2];
+				float d = dx * dx + dy * dy + dz * dz;
+				if (d < bestDistance) {
+					bestDistance = d;
+					best = c;
+				}
+			}
+			if (best < 0) {
+				best = clusters++;
+				clusterX[best] = o.position[0];
+				clusterY[best] = o.position[1];
+				clusterZ[best] = o.position[2];
+				clusterSize[best] = 1;
+				clusterSensors[best] = bit;
+			} else {
+				int n = ++clusterSize[best];
+				clusterX[best] += (o.position[0] - clusterX[best]) / n;
+				clusterY[best] += (o.position[1] - clusterY[best]) / n;
+				clusterZ[best] += (o.position[2] - clusterZ[best]) / n;
+				clusterSensors[best] |= bit;
+			}
+			members[i] = best;
+		}
+		return clusters;
+	}
+
+	/** Confidence-weighted average of the joints of the observations in cluster {@code c}. */
+	private void fuse(WorldFrame.User user, int c, int count) {
+		float[] joints = user.joints;
+		Arrays.fill(joints, 0);
+		user.pose = null;
+		for (int i = 0; i < count; ++i) {
+			if (members[i] != c) {
+				continue;
+			}
+			Observation o = observations.get(i);
+			if (user.pose == null) {
+				user.pose = o.pose;
+			}
+			for (int base = 0; base < Skeleton.LENGTH; base += Skeleton.STRIDE) {
+				float confidence = o.joints[base + Skeleton.CONFIDENCE];
+				if (confidence > 0) {
+					joints[base + Skeleton.X] += o.joints[base + Skeleton.X] * confidence;
+					joints[base + Skeleton.Y] += o.joints[base + Skeleton.Y] * confidence;
+					joints[base + Skeleton.Z] += o.joints[base + Skeleton.Z] * confidence;
+					joints[base + Skeleton.CONFIDENCE] += confidence;
+				}
+			}
+		}
+		for (int base = 0; base < Skeleton.LENGTH; base += Skeleton.STRIDE) {
+			float weight = joints[base + Skeleton.CONFIDENCE];
+			if (weight > 0) {
+				joints[base + Skeleton.X] /= weight;
+				joints[base + Skeleton.Y] /= weight;
+				joints[base + Skeleton.Z] /= weight;
+				joints[base + Skeleton.CONFIDENCE] = Math.min(1, weight);
+			}
+		}
+	}
+
+	/** Id of the nearest unclaimed user of the previous merge within the merge distance, or a new id. */
+	private int matchId(WorldFrame.User user) {
+		float limit = mergeDistance * mergeDistance;
+		int best = -1;
+		for (int p = 0; p < previousCount; ++p) {
+			if (previousTaken[p]) {
+				continue;
+			}
+			float dx = previousX[p] - user.x;
+			float dy = previousY[p] - user.y;
+			float dz = previousZ[p] - user.z;
+			float d = dx * dx + dy * dy + dz * dz;
+			if (d < limit) {
+				limit = d;
+				best = p;
+			}
+		}
+		if (best < 0) {
+			return nextId++;
+		}
+		previousTaken[best] = true;
+		return previousId[best];
+	}
+
+	private void ensurePrevious(int count) {
+		if (previousId.length < count) {
+			int size = Math.max(count, 2 * previousId.length);
+			previousId = Arrays.copyOf(previousId, size);
+			previousX = Arrays.copyOf(previousX, size);
+			previousY = Arrays.copyOf(previousY, size);
+			previousZ = Arrays.copyOf(previousZ, size);
+			previousTaken = new boolean[size];
+		}
+	}
+
+	@Override
+	public String toString() {
+		return sensors.toString();
+	}
+
+	/**
+	 * Runs headless over several sensors and prints the merged users once a
+	 * second: {@code --synthetic <sensors> <users>}, or one
+	 * {@code <config.xml>[@<extrinsics>]} per sensor, see {@link Extrinsics#parse(String)}.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		if (args.length == 0) {
+			System.err.println("usage: SensorManager --synthetic <sensors> <users> | <config.xml>[@yaw,pitch,roll,tx,ty,tz]...");
+			System.exit(2);
+		}
+		final SensorManager manager = new SensorManager();
+		try {
+			if (args[0].equals("--synthetic")) {
+				int count = Integer.parseInt(args[1]);
+				int users = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+				for (int i = 0; i < count; ++i) {
+					manager.addSensor("synthetic" + i,
+							new SensorSession(new SyntheticFrameSource(640, 480, users), false), Extrinsics.IDENTITY);
+				}
+			} else {
+				for (String arg : args) {
+					int at = arg.indexOf('@');
+					String config = at < 0 ? arg : arg.substring(0, at);
+					Extrinsics extrinsics = at < 0 ? Extrinsics.IDENTITY : Extrinsics.parse(arg.substring(at + 1));
+					manager.addSensor(config, new SensorSession(new OpenNIFrameSource(config), false), extrinsics);
+				}
+			}
+		} catch (GeneralException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		manager.addListener(new WorldListener() {
+			private long lastReport;
+
+			@Override
+			public void worldUpdated(WorldFrame world) {
+				long now = System.currentTimeMillis();
+				if (now - lastReport < 1000) {
+					return;
+				}
+				lastReport = now;
+				StringBuilder line = new StringBuilder("world:");
+				for (WorldFrame.User user : world.users) {
+					line.append(String.format(" %d@(%.0f,%.0f,%.0f)x%d", user.id, user.x, user.y, user.z, user.sensors));
+				}
+				EventLog.getDefault().log(EventLog.Type.MESSAGE, 0, line.toString());
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				manager.stop();
+			}
+		});
+		manager.start(2);
+		Thread.currentThread().join();
+	}
+
+}
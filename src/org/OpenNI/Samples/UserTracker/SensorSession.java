@@ -0,0 +1,134 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.OpenNI.GeneralException;
+
+/**
+ * One sensor session shared by all views. A frame is read once from the
+ * source, run through the depth and skeleton stages and the same snapshot is
+ * handed to every registered listener, so depth, segmentation and skeleton
+ * tracking run once per frame no matter how many windows are open.
+ * <p>
+ * {@link #update()} runs every step on the calling thread; {@link FramePipeline}
+ * runs them on separate threads.
+ */
+public class SensorSession {
+
+	private final FrameSource source;
+	private final boolean rendering;
+	private final Frame frame;
+	private final DepthProcessor depthProcessor = new DepthProcessor();
+	private final SkeletonProcessor skeletonProcessor = new SkeletonProcessor();
+	private final JointDemand jointDemand = new JointDemand();
+	private final UserRegistry userRegistry = new UserRegistry(UserRegistry.DEFAULT_CAPACITY);
+	private final PipelineMetrics metrics = new PipelineMetrics();
+	private final CopyOnWriteArrayList<FrameListener> listeners = new CopyOnWriteArrayList<FrameListener>();
+
+	public SensorSession(FrameSource source) {
+		this(source, true);
+	}
+
+	/**
+	 * @param rendering whether frames carry a colorized depth image; headless
+	 *            sessions skip the colorization and its memory
+	 */
+	public SensorSession(FrameSource source, boolean rendering) {
+		this.source = source;
+		this.rendering = rendering;
+		this.frame = createFrame();
+	}
+
+	public boolean isRendering() {
+		return rendering;
+	}
+
+	public int getWidth() {
+		return source.getWidth();
+	}
+
+	public int getHeight() {
+		return source.getHeight();
+	}
+
+	public Frame createFrame() {
+		return new Frame(source.getWidth(), source.getHeight(), rendering);
+	}
+
+	public DepthProcessor getDepthProcessor() {
+		return depthProcessor;
+	}
+
+	public SkeletonProcessor getSkeletonProcessor() {
+		return skeletonProcessor;
+	}
+
+	/** Joints needed by the consumers of this session. */
+	public JointDemand getJointDemand() {
+		return jointDemand;
+	}
+
+	/** Slots and lifecycle of the users of this session. */
+	public UserRegistry getUserRegistry() {
+		return userRegistry;
+	}
+
+	/** Stage timings, frame rate and user counts of this session. */
+	public PipelineMetrics getMetrics() {
+		return metrics;
+	}
+
+	public void addListener(FrameListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(FrameListener listener) {
+		listeners.remove(listener);
+	}
+
+	void capture(Frame frame) throws GeneralException {
+		frame.requiredJoints = jointDemand.getMask();
+		frame.metrics = metrics;
+		long start = metrics.now();
+		frame.capturedNanos = 0;
+		source.readFrame(frame);
+		// sources that wait for the sensor stamp the end of the wait themselves
+		if (frame.capturedNanos == 0) {
+			frame.capturedNanos = System.nanoTime();
+		}
+		metrics.record(PipelineMetrics.CAPTURE, start);
+	}
+
+	void processSkeleton(Frame frame) {
+		long start = metrics.now();
+		userRegistry.process(frame);
+		skeletonProcessor.process(frame);
+		metrics.record(PipelineMetrics.SKELETON, start);
+	}
+
+	void publish(Frame frame) {
+		long start = metrics.now();
+		for (FrameListener listener : listeners) {
+			listener.frameReady(frame);
+		}
+		metrics.record(PipelineMetrics.PUBLISH, start);
+		metrics.frameDone(frame);
+	}
+
+	public void update() {
+		try {
+			capture(frame);
+		} catch (GeneralException e) {
+			e.printStackTrace();
+			return;
+		}
+		depthProcessor.process(frame);
+		processSkeleton(frame);
+		publish(frame);
+	}
+
+	public void release() {
+		source.release();
+	}
+
+}
@@ -0,0 +1,68 @@
+package org.OpenNI.Samples.UserTracker;
+
+import org.OpenNI.SkeletonJoint;
+
+/**
+ * Layout of a packed skeleton: one float array per user holding, at
+ * {@link #offset(SkeletonJoint)} for every joint, the real-world position, the
+ * projective position and the confidence. Joints that were not fetched or
+ * had no depth are all zero.
+ */
+public final class Skeleton {
+
+	public static final int X = 0;
+	public static final int Y = 1;
+	public static final int Z = 2;
+	public static final int PROJECTIVE_X = 3;
+	public static final int PROJECTIVE_Y = 4;
+	public static final int PROJECTIVE_Z = 5;
+	public static final int CONFIDENCE = 6;
+
+	public static final int STRIDE = 7;
+	public static final int JOINT_COUNT = SkeletonJoint.values().length;
+	public static final int LENGTH = JOINT_COUNT * STRIDE;
+
+	private Skeleton() {
+	}
+
+	/** Bit set of the given joints, by ordinal. */
+	public static int mask(SkeletonJoint... joints) {
+		int mask = 0;
+		for (SkeletonJoint joint : joints) {
+			mask |= 1 << joint.ordinal();
+		}
+		return mask;
+	}
+
+	public static boolean contains(int mask, SkeletonJoint joint) {
+		return (mask & (1 << joint.ordinal())) != 0;
+	}
+
+	public static int offset(SkeletonJoint joint) {
+		return joint.ordinal() * STRIDE;
+	}
+
+	public static void set(float[] joints, SkeletonJoint joint, float x, float y, float z,
+			float projectiveX, float projectiveY, float projectiveZ, float confidence) {
+		int i = offset(joint);
+		joints[i + X] = x;
+		joints[i + Y] = y;
+		joints[i + Z] = z;
+		joints[i + PROJECTIVE_X] = projectiveX;
+		joints[i + PROJECTIVE_Y] = projectiveY;
+		joints[i + PROJECTIVE_Z] = projectiveZ;
+		joints[i + CONFIDENCE] = confidence;
+	}
+
+	public static void clear(float[] joints, SkeletonJoint joint) {
+		int i = offset(joint);
+		for (int k = 0; k < STRIDE; ++k) {
+			joints[i + k] = 0;
+		}
+	}
+
+	public static float get(float[] joints, SkeletonJoint joint, int field) {
+		return joints[offset(joint) + field];
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.OpenNI.Samples.UserTracker;
+
+import org.OpenNI.SkeletonJoint;
+
+/**
+ * Turns the joints of every tracked user into the normalized bone vectors
+ * used by {@link GestureRecognizer}, smoothing the joints first and labelling
+ * the poses afterwards if a joint filter and a pose classifier are set.
+ */
+public class SkeletonProcessor implements FrameStage {
+
+	/** Start and end joint of each bone, in the attribute order of header.txt. */
+	static final SkeletonJoint[][] BONES = {
+		{ SkeletonJoint.HEAD, SkeletonJoint.NECK },
+		{ SkeletonJoint.NECK, SkeletonJoint.LEFT_SHOULDER },
+		{ SkeletonJoint.LEFT_SHOULDER, SkeletonJoint.LEFT_ELBOW },
+		{ SkeletonJoint.LEFT_ELBOW, SkeletonJoint.LEFT_HAND },
+		{ SkeletonJoint.NECK, SkeletonJoint.RIGHT_SHOULDER },
+		{ SkeletonJoint.RIGHT_SHOULDER, SkeletonJoint.RIGHT_ELBOW },
+		{ SkeletonJoint.RIGHT_ELBOW, SkeletonJoint.RIGHT_HAND },
+		{ SkeletonJoint.LEFT_SHOULDER, SkeletonJoint.TORSO },
+		{ SkeletonJoint.TORSO, SkeletonJoint.RIGHT_HIP },
+		{ SkeletonJoint.RIGHT_HIP, SkeletonJoint.RIGHT_KNEE },
+		{ SkeletonJoint.RIGHT_KNEE, SkeletonJoint.RIGHT_FOOT },
+		{ SkeletonJoint.RIGHT_SHOULDER, SkeletonJoint.TORSO },
+		{ SkeletonJoint.TORSO, SkeletonJoint.LEFT_HIP },
+		{ SkeletonJoint.LEFT_HIP, SkeletonJoint.LEFT_KNEE },
+		{ SkeletonJoint.LEFT_KNEE, SkeletonJoint.LEFT_FOOT }
+	};
+
+	/** Length of every bone vector after normalization. */
+	static final float BONE_LENGTH = 50f;
+
+	private volatile JointFilter filter;
+	private volatile PoseClassifier classifier;
+
+	public JointFilter getJointFilter() {
+		return filter;
+	}
+
+	public void setJointFilter(JointFilter filter) {
+		this.filter = filter;
+	}
+
+	public PoseClassifier getPoseClassifier() {
+		return classifier;
+	}
+
+	public void setPoseClassifier(PoseClassifier classifier) {
+		this.classifier = classifier;
+	}
+
+	@Override
+	public void process(Frame frame) {
+		JointFilter filter = this.filter;
+		if (filter != null) {
+			filter.process(frame);
+		}
+		int required = frame.requiredJoints;
+		for (int i = 0; i < frame.users.size(); ++i) {
+			Frame.User user = frame.users.get(i);
+			if (user.state != UserState.TRACKING || !user.hasJoints) {
+				user.hasBones = false;
+				continue;
+			}
+			float[] joints = user.joints;
+			float[] bones = user.bones;
+			for (int b = 0; b < BONES.length; ++b) {
+				// bones with a joint that was not fetched stay zero
+				if (!Skeleton.contains(required, BONES[b][0]) || !Skeleton.contains(required, BONES[b][1])) {
+					bones[3 * b] = bones[3 * b + 1] = bones[3 * b + 2] = 0;
+					continue;
+				}
+				int start = Skeleton.offset(BONES[b][0]) + Skeleton.PROJECTIVE_X;
+				int end = Skeleton.offset(BONES[b][1]) + Skeleton.PROJECTIVE_X;
+				bones[3 * b] = joints[end] - joints[start];
+				bones[3 * b + 1] = joints[end + 1] - joints[start + 1];
+				bones[3 * b + 2] = joints[end + 2] - joints[start + 2];
+				Vector3D.normalize(bones, b);
+				Vector3D.scale(bones, b, BONE_LENGTH);
+			}
+			user.hasBones = true;
+		}
+		PoseClassifier classifier = this.classifier;
+		if (classifier != null) {
+			classifier.process(frame);
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the joints of every tracked user to a binary skeleton stream, see
+ * {@link SkeletonRecording} for the layout. A frame without tracked users is
+ * written as one empty record, so a replay keeps its timing. Records are collected in a direct
+ * buffer sized for {@code bufferFrames} frames of six users and written with a
+ * single channel write whenever it fills. Recording into an existing file
+ * continues its frame numbering.
+ */
+public class SkeletonRecorder implements FrameListener, Closeable {
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private int frameNumber;
+
+	public SkeletonRecorder(File file, int width, int height) throws IOException {
+		this(file, width, height, 64);
+	}
+
+	public SkeletonRecorder(File file, int width, int height, int bufferFrames) throws IOException {
+		if (file.exists() && file.length() > 0) {
+			SkeletonRecording existing = new SkeletonRecording(file);
+			try {
+				if (existing.getWidth() != width || existing.getHeight() != height) {
+					throw new IOException(file + " was recorded at " + existing.getWidth() + "x" + existing.getHeight());
+				}
+				frameNumber = existing.getFrameCount();
+			} finally {
+				existing.close();
+			}
+		}
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		buffer = ByteBuffer.allocateDirect(Math.max(1, bufferFrames * 6) * SkeletonRecording.RECORD_SIZE)
+			.order(ByteOrder.LITTLE_ENDIAN);
+		long size = channel.size();
+		if (size == 0) {
+			SkeletonRecording.writeHeader(buffer, width, height);
+		} else {
+			// drop a partial record left by an interrupted recording
+			long records = (size - SkeletonRecording.HEADER_SIZE) / SkeletonRecording.RECORD_SIZE;
+			channel.position(SkeletonRecording.HEADER_SIZE + records * SkeletonRecording.RECORD_SIZE);
+		}
+	}
+
+	@Override
+	public synchronized void frameReady(Frame frame) {
+		try {
+			int recorded = 0;
+			for (int i = 0; i < frame.users.size(); ++i) {
+				Frame.User user = frame.users.get(i);
+				if (user.state == UserState.TRACKING && user.hasJoints) {
+					record(frame.timestamp, user);
+					recorded++;
+				}
+			}
+			if (recorded == 0) {
+				record(frame.timestamp, null);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		frameNumber++;
+	}
+
+	/** Writes the joints of {@code user}, or an empty record if it is null. */
+	private void record(long timestamp, Frame.User user) throws IOException {
+		if (buffer.remaining() < SkeletonRecording.RECORD_SIZE) {
+			flush();
+		}
+		if (user == null) {
+			buffer.putLong(timestamp).putInt(frameNumber).putInt(SkeletonRecording.NO_USER);
+			for (int j = 0; j < Frame.JOINTS.length * SkeletonRecording.JOINT_FLOATS; ++j) {
+				buffer.putFloat(0);
+			}
+			return;
+		}
+		buffer.putLong(timestamp).putInt(frameNumber).putInt(user.id);
+		float[] joints = user.joints;
+		for (int j = 0; j < Frame.JOINTS.length; ++j) {
+			int pos = Skeleton.offset(Frame.JOINTS[j]);
+			buffer.putFloat(joints[pos + Skeleton.X])
+				.putFloat(joints[pos + Skeleton.Y])
+				.putFloat(joints[pos + Skeleton.Z])
+				.putFloat(joints[pos + Skeleton.CONFIDENCE]);
+		}
+	}
+
+	/** Writes the buffered records to the file. */
+	public synchronized void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/** Number of frames recorded so far, including those of an earlier recording. */
+	public synchronized int getFrameCount() {
+		return frameNumber;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (channel.isOpen()) {
+			flush();
+			channel.close();
+		}
+	}
+
+}
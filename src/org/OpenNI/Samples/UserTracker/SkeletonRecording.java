@@ -0,0 +1,177 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.OpenNI.SkeletonJoint;
+
+/**
+ * Memory-mapped reader of a skeleton stream written by {@link SkeletonRecorder}.
+ * <p>
+ * The file is a {@link #HEADER_SIZE} byte header followed by fixed-width
+ * little-endian records of {@link #RECORD_SIZE} bytes, one per tracked user
+ * and frame, ordered by frame number:
+ * <pre>
+ * long  timestamp   sensor time in microseconds
+ * int   frame       frame number, counted from 0
+ * int   user        user id, {@link #NO_USER} in the single record of a frame without tracked users
+ * float x, y, z, confidence   real-world position, per joint in {@link Frame#JOINTS} order
+ * </pre>
+ * Any record can be read in constant time by index; {@link #findFrame(int)}
+ * locates a frame by binary search.
+ */
+public class SkeletonRecording implements Closeable {
+
+	static final int MAGIC = 0x314C4B53; // "SKL1"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 32;
+	static final int JOINT_FLOATS = 4;
+	static final int RECORD_SIZE = 16 + Frame.JOINTS.length * JOINT_FLOATS * 4;
+	/** User id of the empty record kept for a frame in which nobody was tracked. */
+	public static final int NO_USER = 0;
+
+	/** Records per mapped segment, so files beyond 2 GB can be mapped too. */
+	private static final int SEGMENT_SHIFT = 22;
+	private static final int SEGMENT_RECORDS = 1 << SEGMENT_SHIFT;
+
+	private final FileChannel channel;
+	private final ByteBuffer[] segments;
+	private final int width, height;
+	private final int size;
+
+	public SkeletonRecording(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+			}
+			header.flip();
+			if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a skeleton recording");
+			}
+			if (header.getInt(4) != VERSION || header.getInt(16) != Frame.JOINTS.length
+					|| header.getInt(20) != RECORD_SIZE) {
+				throw new IOException(file + " has an unsupported record layout");
+			}
+			width = header.getInt(8);
+			height = header.getInt(12);
+
+			long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+			if (records > Integer.MAX_VALUE) {
+				throw new IOException(file + " has too many records");
+			}
+			size = (int) records;
+			segments = new ByteBuffer[(size + SEGMENT_RECORDS - 1) >>> SEGMENT_SHIFT];
+			for (int i = 0; i < segments.length; ++i) {
+				long start = HEADER_SIZE + (long) i * SEGMENT_RECORDS * RECORD_SIZE;
+				long length = (long) Math.min(SEGMENT_RECORDS, size - i * SEGMENT_RECORDS) * RECORD_SIZE;
+				MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+				segments[i] = segment.order(ByteOrder.LITTLE_ENDIAN);
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	static void writeHeader(ByteBuffer buffer, int width, int height) {
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height)
+			.putInt(Frame.JOINTS.length).putInt(RECORD_SIZE).putLong(0);
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/** Number of records, i.e. user samples and empty frames, in the file. */
+	public int size() {
+		return size;
+	}
+
+	private ByteBuffer segment(int record) {
+		return segments[record >>> SEGMENT_SHIFT];
+	}
+
+	private static int position(int record) {
+		return (record & (SEGMENT_RECORDS - 1)) * RECORD_SIZE;
+	}
+
+	public long getTimestamp(int record) {
+		return segment(record).getLong(position(record));
+	}
+
+	public int getFrame(int record) {
+		return segment(record).getInt(position(record) + 8);
+	}
+
+	public int getUserId(int record) {
+		return segment(record).getInt(position(record) + 12);
+	}
+
+	/** Number of frames covered, from frame 0 to the last recorded one. */
+	public int getFrameCount() {
+		return size == 0 ? 0 : getFrame(size - 1) + 1;
+	}
+
+	/**
+	 * Index of the first record of the given frame or of the next recorded one,
+	 * {@link #size()} if there is none.
+	 */
+	public int findFrame(int frame) {
+		int low = 0, high = size;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (getFrame(mid) < frame) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Copies the joints of a record into a packed skeleton. Projective
+	 * positions are filled with {@code projection} when it is not null.
+	 */
+	public void readJoints(int record, float[] joints, Projection projection) {
+		readJoints(record, joints, projection, JointDemand.ALL);
+	}
+
+	/** Like {@link #readJoints(int, float[], Projection)}, clearing the joints not in {@code required}. */
+	public void readJoints(int record, float[] joints, Projection projection, int required) {
+		ByteBuffer buffer = segment(record);
+		int pos = position(record) + 16;
+		for (int j = 0; j < Frame.JOINTS.length; ++j) {
+			SkeletonJoint joint = Frame.JOINTS[j];
+			float x = buffer.getFloat(pos);
+			float y = buffer.getFloat(pos + 4);
+			float z = buffer.getFloat(pos + 8);
+			float confidence = buffer.getFloat(pos + 12);
+			pos += JOINT_FLOATS * 4;
+			if (z == 0 || !Skeleton.contains(required, joint)) {
+				Skeleton.clear(joints, joint);
+			} else if (projection == null) {
+				Skeleton.set(joints, joint, x, y, z, 0, 0, 0, confidence);
+			} else {
+				Skeleton.set(joints, joint, x, y, z, projection.projectX(x, z), projection.projectY(y, z), z, confidence);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
@@ -0,0 +1,122 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Frame source that needs no device. Produces a sloped background, one
+ * rectangular blob per user in the label map and a standing skeleton per user
+ * whose arms swing slowly from frame to frame. Joints are generated in
+ * projective coordinates; their real-world positions are derived with the
+ * default Xtion field of view.
+ */
+public class SyntheticFrameSource implements FrameSource {
+
+	/** Standing pose for a 640x480 frame, x, y (pixels) and z (mm) per joint in {@link Frame#JOINTS} order. */
+	private static final float[] POSE = {
+		320, 100, 2000,
+		320, 140, 2000,
+		280, 150, 2000,
+		260, 200, 1980,
+		250, 250, 1950,
+		360, 150, 2000,
+		380, 200, 1980,
+		390, 250, 1950,
+		320, 210, 2000,
+		295, 270, 2000,
+		290, 340, 2010,
+		290, 410, 2020,
+		345, 270, 2000,
+		350, 340, 2010,
+		350, 410, 2020
+	};
+
+	/** Timestamp step of a 30 fps sensor. */
+	private static final long FRAME_MICROS = 33333;
+
+	private final int width, height;
+	private final int userCount;
+	private final Projection projection;
+	private int frameNumber = 0;
+
+	public SyntheticFrameSource(int width, int height, int userCount) {
+		this.width = width;
+		this.height = height;
+		this.userCount = userCount;
+		this.projection = new Projection(width, height, Projection.DEFAULT_HFOV, Projection.DEFAULT_VFOV);
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public void readFrame(Frame frame) {
+		short[] depth = frame.depth;
+		short[] scene = frame.scene;
+		float scale = height / 480f;
+		float swing = (float) Math.sin(frameNumber * 0.1) * 20 * scale;
+
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int pos = y * width + x;
+				depth[pos] = (short) (3000 + y * 2000 / height);
+				scene[pos] = 0;
+			}
+		}
+
+		frame.clearUsers();
+		for (int u = 0; u < userCount; ++u) {
+			Frame.User user = frame.addUser(u + 1);
+			user.state = UserState.TRACKING;
+
+			float offsetX = width * (u + 1) / (float) (userCount + 1) - 320 * scale;
+			float minX = width, minY = height, maxX = 0, maxY = 0;
+			for (int j = 0; j < Frame.JOINTS.length; ++j) {
+				float x = POSE[3 * j] * scale + offsetX;
+				float y = POSE[3 * j + 1] * scale;
+				float z = POSE[3 * j + 2];
+				if (j == 4 || j == 7) {
+					y -= swing;
+				}
+				if (Skeleton.contains(frame.requiredJoints, Frame.JOINTS[j])) {
+					Skeleton.set(user.joints, Frame.JOINTS[j], projection.realX(x, z), projection.realY(y, z), z, x, y, z, 1);
+				} else {
+					Skeleton.clear(user.joints, Frame.JOINTS[j]);
+				}
+				minX = Math.min(minX, x);
+				minY = Math.min(minY, y);
+				maxX = Math.max(maxX, x);
+				maxY = Math.max(maxY, y);
+			}
+			user.hasJoints = true;
+			user.comX = (minX + maxX) / 2;
+			user.comY = (minY + maxY) / 2;
+			user.comZ = 2000;
+
+			int x0 = Math.max(0, (int) (minX - 15 * scale));
+			int x1 = Math.min(width, (int) (maxX + 15 * scale));
+			int y0 = Math.max(0, (int) (minY - 20 * scale));
+			int y1 = Math.min(height, (int) (maxY + 10 * scale));
+			for (int y = y0; y < y1; ++y) {
+				for (int x = x0; x < x1; ++x) {
+					int pos = y * width + x;
+					depth[pos] = (short) (2000 + (x & 7));
+					scene[pos] = (short) user.id;
+				}
+			}
+		}
+
+		frame.calibPose = "Psi";
+		frame.timestamp = frameNumber * FRAME_MICROS;
+		frameNumber++;
+	}
+
+	@Override
+	public void release() {
+	}
+
+}
@@ -0,0 +1,244 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.OpenNI.GeneralException;
+
+/**
+ * User, skeleton, pose and gesture tracking of one {@link SensorSession}, run
+ * on a {@link FramePipeline}. Uses no AWT classes, so it can run as a server
+ * process; windows are just further listeners of the session. With
+ * {@link #main(String[])} it runs on its own, headless, printing the pose of
+ * every user once a second, every gesture as it is recognised and the
+ * {@link PipelineMetrics} summary every ten seconds.
+ */
+public class TrackingService {
+
+	private final SensorSession session;
+	private final JointFilter jointFilter = new JointFilter();
+	private final PoseClassifier poseClassifier;
+	private final GestureEngine gestureEngine = new GestureEngine();
+	private FramePipeline pipeline;
+	private final ArrayList<Closeable> recorders = new ArrayList<Closeable>();
+
+	/**
+	 * @param trainingFile ARFF file of labelled poses, loaded if it exists
+	 */
+	public TrackingService(SensorSession session, File trainingFile) {
+		this.session = session;
+
+		PoseDataset dataset = new PoseDataset();
+		if (trainingFile != null && trainingFile.exists()) {
+			try {
+				dataset = PoseDataset.load(trainingFile);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		poseClassifier = new PoseClassifier(dataset, 5);
+		poseClassifier.setBudget(5, TimeUnit.MILLISECONDS);
+
+		session.getSkeletonProcessor().setJointFilter(jointFilter);
+		session.getSkeletonProcessor().setPoseClassifier(poseClassifier);
+		session.addListener(gestureEngine);
+	}
+
+	public SensorSession getSession() {
+		return session;
+	}
+
+	public JointFilter getJointFilter() {
+		return jointFilter;
+	}
+
+	public PoseClassifier getPoseClassifier() {
+		return poseClassifier;
+	}
+
+	public GestureEngine getGestureEngine() {
+		return gestureEngine;
+	}
+
+	public FramePipeline getPipeline() {
+		return pipeline;
+	}
+
+	public synchronized void start(int queueCapacity) {
+		if (pipeline == null) {
+			pipeline = new FramePipeline(session, queueCapacity);
+			pipeline.start();
+		}
+	}
+
+	/**
+	 * Appends the skeletons of every frame to {@code file}, see
+	 * {@link SkeletonRecorder}, until the service is stopped. A recording can
+	 * be replayed with {@link RecordedSkeletonSource}.
+	 */
+	public synchronized void recordSkeletons(File file) throws IOException {
+		SkeletonRecorder recorder = new SkeletonRecorder(file, session.getWidth(), session.getHeight());
+		recorders.add(recorder);
+		session.addListener(recorder);
+	}
+
+	/**
+	 * Appends the depth and label maps of every frame to {@code file}, see
+	 * {@link DepthRecorder}, until the service is stopped. A recording can be
+	 * replayed with {@link RecordedDepthSource}.
+	 */
+	public synchronized void recordDepth(File file) throws IOException {
+		DepthRecorder recorder = new DepthRecorder(file, session.getWidth(), session.getHeight());
+		recorders.add(recorder);
+		session.addListener(recorder);
+	}
+
+	/**
+	 * Logs the metrics of the session every {@code periodMillis} and exposes
+	 * them over JMX under {@code name}.
+	 */
+	public void startMetrics(String name, long periodMillis) {
+		session.getMetrics().register(name);
+		session.getMetrics().start(periodMillis);
+	}
+
+	/** Stops the pipeline, the metrics and the recordings and releases the sensor. */
+	public synchronized void stop() {
+		session.getMetrics().stop();
+		session.getMetrics().unregister();
+		if (pipeline != null) {
+			pipeline.stop();
+			pipeline = null;
+			session.release();
+		}
+		for (Closeable recorder : recorders) {
+			session.removeListener((FrameListener) recorder);
+			try {
+				recorder.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		recorders.clear();
+	}
+
+	/**
+	 * Runs headless: {@code [--synthetic <users>] [--config <xml>] [--training <arff>] [--seconds <n>]
+	 * [--metrics <seconds between summaries>] [--record-skeletons <file>] [--record-depth <file>]
+	 * [--replay-depth <file>] [--predict <milliseconds> | auto]}; {@code --replay-depth} reads the frames
+	 * from a depth recording instead of the sensor, {@code --predict} extrapolates the joints by a fixed
+	 * time or by the measured pipeline latency.
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		System.setProperty("java.awt.headless", "true");
+		String config = "SamplesConfig.xml";
+		String training = "output.arff";
+		int syntheticUsers = -1;
+		long seconds = 0;
+		long metricsSeconds = 10;
+		String skeletonFile = null;
+		String depthFile = null;
+		String replayFile = null;
+		String predict = null;
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("--synthetic")) {
+				syntheticUsers = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("--config")) {
+				config = args[i + 1];
+			} else if (args[i].equals("--training")) {
+				training = args[i + 1];
+			} else if (args[i].equals("--seconds")) {
+				seconds = Long.parseLong(args[i + 1]);
+			} else if (args[i].equals("--metrics")) {
+				metricsSeconds = Long.parseLong(args[i + 1]);
+			} else if (args[i].equals("--record-skeletons")) {
+				skeletonFile = args[i + 1];
+			} else if (args[i].equals("--record-depth")) {
+				depthFile = args[i + 1];
+			} else if (args[i].equals("--replay-depth")) {
+				replayFile = args[i + 1];
+			} else if (args[i].equals("--predict")) {
+				predict = args[i + 1];
+			} else {
+				System.err.println("unknown option " + args[i]);
+				System.exit(2);
+			}
+		}
+
+		FrameSource source = null;
+		try {
+			if (replayFile != null) {
+				source = new RecordedDepthSource(new File(replayFile));
+			} else if (syntheticUsers >= 0) {
+				source = new SyntheticFrameSource(640, 480, syntheticUsers);
+			} else {
+				source = new OpenNIFrameSource(config);
+			}
+		} catch (GeneralException e) {
+			e.printStackTrace();
+			System.exit(1);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		final TrackingService service = new TrackingService(new SensorSession(source, false), new File(training));
+		if ("auto".equals(predict)) {
+			service.getJointFilter().setAdaptivePrediction(true);
+		} else if (predict != null) {
+			service.getJointFilter().setPrediction(Long.parseLong(predict), TimeUnit.MILLISECONDS);
+		}
+		try {
+			if (skeletonFile != null) {
+				service.recordSkeletons(new File(skeletonFile));
+			}
+			if (depthFile != null) {
+				service.recordDepth(new File(depthFile));
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+		service.getGestureEngine().addListener(new GestureListener() {
+			@Override
+			public void gestureDetected(GestureEvent event) {
+				EventLog.getDefault().log(EventLog.Type.GESTURE, event.userId, event.gesture, event.distance);
+			}
+		});
+		service.getSession().addListener(new FrameListener() {
+			private long lastReport;
+
+			@Override
+			public void frameReady(Frame frame) {
+				long now = System.currentTimeMillis();
+				if (now - lastReport < 1000) {
+					return;
+				}
+				lastReport = now;
+				StringBuilder line = new StringBuilder(service.getSession().getUserRegistry().toString()).append(':');
+				for (int i = 0; i < frame.users.size(); ++i) {
+					Frame.User user = frame.users.get(i);
+					line.append(' ').append(user.id).append('=').append(user.pose != null ? user.pose : user.state);
+				}
+				EventLog.getDefault().log(EventLog.Type.MESSAGE, 0, line.toString());
+			}
+		});
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				service.stop();
+			}
+		});
+
+		service.start(2);
+		service.startMetrics("tracking", TimeUnit.SECONDS.toMillis(metricsSeconds));
+		if (seconds > 0) {
+			Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+			System.exit(0);
+		}
+		Thread.currentThread().join();
+	}
+
+}
@@ -0,0 +1,16 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Lifecycle of a user in the {@link UserRegistry}.
+ */
+public enum UserLifecycle {
+	/** First frame the user is seen in. */
+	NEW,
+	/** Looking for the calibration pose or calibrating. */
+	CALIBRATING,
+	TRACKING,
+	/** Out of view; the slot is kept until the time to live runs out. */
+	LOST,
+	/** Lost for longer than the time to live; the slot has been freed. */
+	EXPIRED
+}
@@ -0,0 +1,10 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Notified by a {@link UserRegistry} whenever a user changes lifecycle.
+ */
+public interface UserListener {
+
+	void userChanged(UserRegistry.Entry user, UserLifecycle previous);
+
+}
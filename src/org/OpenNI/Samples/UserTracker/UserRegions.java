@@ -0,0 +1,195 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Bounding boxes of the users in the label map, kept up to date from frame to
+ * frame. A user whose box is known is only searched for in that box grown by
+ * {@link #SEARCH} pixels; the whole map is scanned when a user appears, when
+ * one moves further than that between two frames, and every
+ * {@link #FULL_SCAN_INTERVAL} frames to pick up anything missed. The boxes
+ * are stored in the users of the frame and can be turned into per-row spans
+ * of pixels to process.
+ */
+class UserRegions {
+
+	static final int SEARCH = 24;
+	static final int FULL_SCAN_INTERVAL = 30;
+	/** Label values with a box; OpenNI user ids are far smaller. */
+	static final int LABELS = 256;
+
+	private final int[] minX = new int[LABELS];
+	private final int[] minY = new int[LABELS];
+	private final int[] maxX = new int[LABELS];
+	private final int[] maxY = new int[LABELS];
+	private final long[] seen = new long[LABELS];
+	private long sequence;
+	private int width, height;
+	private long fullScans;
+
+	// row intervals of one row while building spans
+	private int[] rowStart = new int[16];
+	private int[] rowEnd = new int[16];
+
+	long getFullScans() {
+		return fullScans;
+	}
+
+	/** Updates the boxes and stores them in the users of {@code frame}. */
+	void update(Frame frame) {
+		long previous = sequence++;
+		boolean full = frame.width != width || frame.height != height || sequence % FULL_SCAN_INTERVAL == 0;
+		width = frame.width;
+		height = frame.height;
+		for (int i = 0; i < frame.users.size() && !full; ++i) {
+			int id = frame.users.get(i).id;
+			full = id <= 0 || id >= LABELS || seen[id] != previous || maxX[id] < 0;
+		}
+
+		if (!full) {
+			for (int i = 0; i < frame.users.size() && !full; ++i) {
+				full = !track(frame.scene, frame.users.get(i).id);
+			}
+		}
+		if (full) {
+			scan(frame.scene);
+		}
+
+		for (int i = 0; i < frame.users.size(); ++i) {
+			Frame.User user = frame.users.get(i);
+			int id = user.id;
+			if (id > 0 && id < LABELS) {
+				seen[id] = sequence;
+				user.minX = minX[id];
+				user.minY = minY[id];
+				user.maxX = maxX[id];
+				user.maxY = maxY[id];
+			}
+		}
+	}
+
+	/**
+	 * Searches for user {@code id} around its last box; returns false if the
+	 * user reaches the edge of the search window, so it may extend past it.
+	 */
+	private boolean track(short[] scene, int id) {
+		int left = Math.max(0, minX[id] - SEARCH);
+		int right = Math.min(width - 1, maxX[id] + SEARCH);
+		int top = Math.max(0, minY[id] - SEARCH);
+		int bottom = Math.min(height - 1, maxY[id] + SEARCH);
+		int x0 = width, y0 = height, x1 = -1, y1 = -1;
+		short label = (short) id;
+		for (int y = top; y <= bottom; ++y) {
+			int row = y * width;
+			for (int x = left; x <= right; ++x) {
+				if (scene[row + x] == label) {
+					if (x < x0) {
+						x0 = x;
+					}
+					if (x > x1) {
+						x1 = x;
+					}
+					if (y < y0) {
+						y0 = y;
+					}
+					y1 = y;
+				}
+			}
+		}
+		minX[id] = x0;
+		minY[id] = y0;
+		maxX[id] = x1;
+		maxY[id] = y1;
+		if (x1 < 0) {
+			return true;
+		}
+		return (x0 > left || left == 0) && (x1 < right || right == width - 1) && (y0 > top || top == 0)
+				&& (y1 < bottom || bottom == height - 1);
+	}
+
+	private void scan(short[] scene) {
+		fullScans++;
+		for (int id = 0; id < LABELS; ++id) {
+			minX[id] = width;
+			minY[id] = height;
+			maxX[id] = -1;
+			maxY[id] = -1;
+		}
+		for (int y = 0, pos = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x, ++pos) {
+				int id = scene[pos];
+				if (id > 0 && id < LABELS) {
+					if (x < minX[id]) {
+						minX[id] = x;
+					}
+					if (x > maxX[id]) {
+						maxX[id] = x;
+					}
+					if (y < minY[id]) {
+						minY[id] = y;
+					}
+					maxY[id] = y;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the pixels of the user boxes of {@code frame} grown by
+	 * {@code margin} as spans of positions {@code [starts[i], ends[i])}, one
+	 * or more per row and without overlaps. Returns the number of spans, or
+	 * -1 if the arrays are too small.
+	 */
+	int spans(Frame frame, int margin, int[] starts, int[] ends) {
+		int count = 0;
+		int users = frame.users.size();
+		if (rowStart.length < users) {
+			rowStart = new int[users];
+			rowEnd = new int[users];
+		}
+		int top = height, bottom = -1;
+		for (int i = 0; i < users; ++i) {
+			Frame.User user = frame.users.get(i);
+			if (user.maxX >= 0) {
+				top = Math.min(top, user.minY - margin);
+				bottom = Math.max(bottom, user.maxY + margin);
+			}
+		}
+		top = Math.max(0, top);
+		bottom = Math.min(height - 1, bottom);
+		for (int y = top; y <= bottom; ++y) {
+			// intervals of the boxes crossing this row, sorted by start
+			int intervals = 0;
+			for (int i = 0; i < users; ++i) {
+				Frame.User user = frame.users.get(i);
+				if (user.maxX < 0 || y < user.minY - margin || y > user.maxY + margin) {
+					continue;
+				}
+				int start = Math.max(0, user.minX - margin);
+				int end = Math.min(width, user.maxX + margin + 1);
+				int j = intervals++;
+				while (j > 0 && rowStart[j - 1] > start) {
+					rowStart[j] = rowStart[j - 1];
+					rowEnd[j] = rowEnd[j - 1];
+					j--;
+				}
+				rowStart[j] = start;
+				rowEnd[j] = end;
+			}
+			int row = y * width;
+			for (int i = 0; i < intervals; ++i) {
+				int start = rowStart[i];
+				int end = rowEnd[i];
+				while (i + 1 < intervals && rowStart[i + 1] <= end) {
+					end = Math.max(end, rowEnd[++i]);
+				}
+				if (count == starts.length) {
+					return -1;
+				}
+				starts[count] = row + start;
+				ends[count] = row + end;
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
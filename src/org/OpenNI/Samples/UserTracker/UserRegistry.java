@@ -0,0 +1,242 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed number of per-user slots with an explicit lifecycle, run as the first
+ * skeleton stage of a {@link SensorSession}. A user gets a slot the first
+ * frame it appears in and keeps it while it is calibrated and tracked; once
+ * out of view it is {@link UserLifecycle#LOST} and gets its slot back if it
+ * returns, until the time to live runs out and it expires. When every slot is
+ * taken a new user replaces the user lost the longest, or is not admitted if
+ * no user is lost, so the state kept per user stays bounded however many
+ * people walk by.
+ * <p>
+ * Every frame user gets its slot number in {@link Frame.User#slot}, so
+ * consumers can keep per-user state in arrays of {@link #getCapacity()}
+ * entries. Entries are reused: listeners and stages must not keep them past
+ * the call. All methods except the statistics are meant for the skeleton
+ * thread, that is for stages and for listeners of this registry.
+ */
+public class UserRegistry implements FrameStage {
+
+	public static final int DEFAULT_CAPACITY = 16;
+
+	public static class Entry {
+
+		final int slot;
+		int userId;
+		UserLifecycle lifecycle = UserLifecycle.EXPIRED;
+		long firstSeen, lastSeen, trackedSince;
+		int returns;
+		long sequence;
+
+		Entry(int slot) {
+			this.slot = slot;
+		}
+
+		public int getSlot() {
+			return slot;
+		}
+
+		public int getUserId() {
+			return userId;
+		}
+
+		public UserLifecycle getLifecycle() {
+			return lifecycle;
+		}
+
+		/** Sensor timestamps in microseconds. */
+		public long getFirstSeen() {
+			return firstSeen;
+		}
+
+		public long getLastSeen() {
+			return lastSeen;
+		}
+
+		/** Start of the current tracking period, 0 if not tracked. */
+		public long getTrackedSince() {
+			return trackedSince;
+		}
+
+		/** Number of times the user came back after being lost. */
+		public int getReturns() {
+			return returns;
+		}
+
+		boolean isActive() {
+			return lifecycle != UserLifecycle.EXPIRED;
+		}
+
+		@Override
+		public String toString() {
+			return userId + "@" + slot + "=" + lifecycle;
+		}
+	}
+
+	private final Entry[] entries;
+	private final IntSlotMap slots;
+	private final CopyOnWriteArrayList<UserListener> listeners = new CopyOnWriteArrayList<UserListener>();
+	private volatile long timeToLive = TimeUnit.SECONDS.toMicros(5);
+	private long sequence;
+	private volatile int size;
+	private volatile long admitted, rejected, expired, returned;
+
+	public UserRegistry(int capacity) {
+		entries = new Entry[capacity];
+		for (int i = 0; i < capacity; ++i) {
+			entries[i] = new Entry(i);
+		}
+		slots = new IntSlotMap(2 * capacity);
+	}
+
+	public int getCapacity() {
+		return entries.length;
+	}
+
+	/** How long a lost user keeps its slot. */
+	public void setTimeToLive(long time, TimeUnit unit) {
+		timeToLive = unit.toMicros(time);
+	}
+
+	public void addListener(UserListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(UserListener listener) {
+		listeners.remove(listener);
+	}
+
+	/** Entry of a slot; its user is inactive if {@link UserLifecycle#EXPIRED}. */
+	public Entry get(int slot) {
+		return entries[slot];
+	}
+
+	/** Entry of a user that has not expired, or null. */
+	public Entry find(int userId) {
+		int slot = slots.get(userId);
+		return slot < 0 ? null : entries[slot];
+	}
+
+	/** Users holding a slot, lost ones included. */
+	public int size() {
+		return size;
+	}
+
+	public long getAdmitted() {
+		return admitted;
+	}
+
+	/** Users not admitted because every slot was taken by a user in view. */
+	public long getRejected() {
+		return rejected;
+	}
+
+	public long getExpired() {
+		return expired;
+	}
+
+	public long getReturned() {
+		return returned;
+	}
+
+	@Override
+	public void process(Frame frame) {
+		long now = frame.timestamp;
+		sequence++;
+		for (int i = 0; i < frame.users.size(); ++i) {
+			Frame.User user = frame.users.get(i);
+			int slot = slots.get(user.id);
+			Entry entry;
+			if (slot < 0) {
+				entry = admit(user.id, now);
+				if (entry == null) {
+					user.slot = -1;
+					continue;
+				}
+			} else {
+				entry = entries[slot];
+				UserLifecycle next = user.state == UserState.TRACKING ? UserLifecycle.TRACKING
+						: UserLifecycle.CALIBRATING;
+				if (entry.lifecycle == UserLifecycle.LOST) {
+					entry.returns++;
+					returned++;
+				}
+				if (next != entry.lifecycle) {
+					entry.trackedSince = next == UserLifecycle.TRACKING ? now : 0;
+					change(entry, next);
+				}
+			}
+			entry.lastSeen = now;
+			entry.sequence = sequence;
+			user.slot = entry.slot;
+		}
+
+		for (Entry entry : entries) {
+			if (!entry.isActive() || entry.sequence == sequence) {
+				continue;
+			}
+			if (entry.lifecycle != UserLifecycle.LOST) {
+				entry.trackedSince = 0;
+				change(entry, UserLifecycle.LOST);
+			} else if (now - entry.lastSeen > timeToLive || now < entry.lastSeen) {
+				// the second case is a source that started over, like a looping recording
+				expire(entry);
+			}
+		}
+	}
+
+	private Entry admit(int userId, long now) {
+		Entry free = null;
+		for (Entry entry : entries) {
+			if (!entry.isActive()) {
+				free = entry;
+				break;
+			}
+			if (entry.lifecycle == UserLifecycle.LOST && (free == null || entry.lastSeen < free.lastSeen)) {
+				free = entry;
+			}
+		}
+		if (free == null) {
+			rejected++;
+			return null;
+		}
+		if (free.isActive()) {
+			expire(free);
+		}
+		free.userId = userId;
+		free.firstSeen = now;
+		free.trackedSince = 0;
+		free.returns = 0;
+		slots.put(userId, free.slot);
+		size++;
+		admitted++;
+		change(free, UserLifecycle.NEW);
+		return free;
+	}
+
+	private void expire(Entry entry) {
+		slots.remove(entry.userId);
+		size--;
+		expired++;
+		change(entry, UserLifecycle.EXPIRED);
+	}
+
+	private void change(Entry entry, UserLifecycle next) {
+		UserLifecycle previous = entry.lifecycle;
+		entry.lifecycle = next;
+		for (UserListener listener : listeners) {
+			listener.userChanged(entry, previous);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "users=" + size + "/" + entries.length + " admitted=" + admitted + " returned=" + returned
+				+ " expired=" + expired + " rejected=" + rejected;
+	}
+
+}
@@ -0,0 +1,10 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Tracking state of a user as seen at the time a frame was captured.
+ */
+public enum UserState {
+	LOOKING_FOR_POSE,
+	CALIBRATING,
+	TRACKING
+}
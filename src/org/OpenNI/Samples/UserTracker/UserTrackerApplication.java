@@ -27,12 +27,16 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
 
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
+import org.OpenNI.GeneralException;
 import org.OpenNI.Point3D;
 import org.OpenNI.SkeletonJoint;
+import org.OpenNI.SkeletonProfile;
 
 public class UserTrackerApplication {
 
@@ -40,12 +44,21 @@ public class UserTrackerApplication {
 	 * 
 	 */
 	public UserTracker viewer;
-	private static boolean shouldRun = true;
+	private final CountDownLatch closed = new CountDownLatch(1);
 	private JFrame frame;
+	private SensorSession session;
+	private TrackingService service;
 
-    public UserTrackerApplication (JFrame frame)
+	private static final SkeletonProfile[] PROFILES = {null, SkeletonProfile.UPPER, SkeletonProfile.LOWER, SkeletonProfile.HEAD_HANDS};
+	private int profile;
+
+	private static final String SAMPLE_XML_FILE = "SamplesConfig.xml";
+	private static final String TRAINING_FILE = "output.arff";
+
+    public UserTrackerApplication (JFrame frame, SensorSession session)
     {
     	this.frame = frame;
+    	this.session = session;
     	frame.addKeyListener(new KeyListener()
 		{
 			@Override
@@ -56,13 +69,28 @@ public class UserTrackerApplication {
 			public void keyPressed(KeyEvent arg0) {
 				if (arg0.getKeyCode() == KeyEvent.VK_ESCAPE)
 				{
-					shouldRun = false;
+					closed.countDown();
+				}
+				else if (arg0.getKeyCode() == KeyEvent.VK_P)
+				{
+					// cycle through the tracking profiles, back to the one the views need
+					profile = (profile + 1) % PROFILES.length;
+					UserTrackerApplication.this.session.getJointDemand().setProfile(PROFILES[profile]);
+					EventLog.getDefault().log(EventLog.Type.MESSAGE, 0, "skeleton profile " + (PROFILES[profile] == null ? "auto" : PROFILES[profile]));
+				}
+				else if (arg0.getKeyCode() == KeyEvent.VK_R)
+				{
+					// toggle depth processing around the users only
+					DepthProcessor depth = UserTrackerApplication.this.session.getDepthProcessor();
+					depth.setRegionOfInterest(!depth.isRegionOfInterest());
+					EventLog.getDefault().log(EventLog.Type.MESSAGE, 0, "region of interest " + (depth.isRegionOfInterest() ? "on" : "off"));
 				}
 			}
 		});
     }
 
     public static GestureRecognizer GestureRecognizerComponent;
+    private static int gestureCount;
     
     public static void main(String s[])
     {
@@ -70,28 +98,70 @@ public class UserTrackerApplication {
         f.addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent e) {System.exit(0);}
         });
-        UserTrackerApplication app = new UserTrackerApplication(f);
+        SensorSession session = null;
+        try {
+            session = new SensorSession(new OpenNIFrameSource(SAMPLE_XML_FILE));
+        } catch (GeneralException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+        TrackingService service = new TrackingService(session, new File(TRAINING_FILE));
+        // draw the skeletons where the users are by the time the frame is shown
+        service.getJointFilter().setAdaptivePrediction(true);
+        UserTrackerApplication app = new UserTrackerApplication(f, session);
+        app.service = service;
         
         JFrame gestureFrame = new JFrame("Gesture recognizer");
-        GestureRecognizerComponent = new GestureRecognizer();
+        GestureRecognizerComponent = new GestureRecognizer(session);
+        final GestureEngine gestures = service.getGestureEngine();
+        gestures.addListener(new GestureListener() {
+            public void gestureDetected(GestureEvent event) {EventLog.getDefault().log(EventLog.Type.GESTURE, event.userId, event.gesture, event.distance);}
+        });
         gestureFrame.add(GestureRecognizerComponent);
         gestureFrame.pack();
         gestureFrame.setVisible(true);
+        gestureFrame.addKeyListener(new KeyListener()
+		{
+			@Override
+			public void keyTyped(KeyEvent arg0) {}
+			@Override
+			public void keyReleased(KeyEvent arg0) {}
+			@Override
+			public void keyPressed(KeyEvent arg0) {
+				switch (arg0.getKeyChar())
+				{
+				case '1': GestureRecognizerComponent.startRecording("stay"); break;
+				case '2': GestureRecognizerComponent.startRecording("seat"); break;
+				case '3': GestureRecognizerComponent.startRecording("lie"); break;
+				case '0': GestureRecognizerComponent.stopRecording(); break;
+				case 'g':
+					// the last second of the user on screen becomes a new gesture
+					int userId = GestureRecognizerComponent.getSelectedUserId();
+					GestureTemplate template = gestures.captureTemplate(userId, "gesture" + (++gestureCount), 30, 10);
+					if (template != null)
+					{
+						gestures.addTemplate(template);
+						EventLog.getDefault().log(EventLog.Type.MESSAGE, userId, "recorded " + template.getName());
+					}
+					break;
+				}
+			}
+		});
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {GestureRecognizerComponent.close();}
+        });
         gestureFrame.addMouseListener(new MouseListener() {
 
 			@Override
 			public void mouseClicked(MouseEvent arg0) {
 				if(SwingUtilities.isLeftMouseButton(arg0)) {
-					System.out.println("left button(stay)");
 					GestureRecognizerComponent.scanVectors("stay");
 				}
 				else if(SwingUtilities.isRightMouseButton(arg0)) {
-					System.out.println("right button(seat)");
 					GestureRecognizerComponent.scanVectors("seat");
 				}
 				else 
 				{
-					System.out.println("lie");
 					GestureRecognizerComponent.scanVectors("lie");
 				}
 				
@@ -125,7 +195,7 @@ public class UserTrackerApplication {
         	
         }); 
         
-        app.viewer = new UserTracker();
+        app.viewer = new UserTracker(session);
         f.add("Center", app.viewer);
         f.pack();
         f.setVisible(true);
@@ -135,12 +205,15 @@ public class UserTrackerApplication {
 
     void run()
     {
-        while(shouldRun) {
-            viewer.updateDepth();
-            GestureRecognizerComponent.updateDepth();
-            viewer.repaint();
-            GestureRecognizerComponent.repaint();
+        service.start(2);
+        service.startMetrics("UserTracker", 10000);
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
+        service.stop();
+        GestureRecognizerComponent.close();
         frame.dispose();
     }
     
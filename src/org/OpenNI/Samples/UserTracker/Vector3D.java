@@ -2,69 +2,144 @@ package org.OpenNI.Samples.UserTracker;
 
 import org.OpenNI.Point3D;
 
+/**
+ * Mutable float vector. All operations except {@link #getNormalizedVector()}
+ * work in place and return {@code this}, so a vector can be reused frame
+ * after frame. The static methods apply the same operations to vectors packed
+ * as x, y, z triples in a float array, like the bone vectors of a skeleton.
+ */
 public class Vector3D {
 	
-	private Point3D mVectorCoordinates;
-	private double mMagnitude = 0;
+	public float x, y, z;
+	
+	public Vector3D() {
+	}
+	
+	public Vector3D(float x, float y, float z) {
+		set(x, y, z);
+	}
 	
 	public Vector3D(Point3D start, Point3D end) {
-		mVectorCoordinates = new Point3D(end.getX() - start.getX(), end.getY() - start.getY(), end.getZ() - start.getZ());
+		set(start, end);
 	}
 	
-	private Vector3D (Point3D coordinates) {
-		mVectorCoordinates = coordinates;
-		
+	public Vector3D set(float x, float y, float z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		return this;
+	}
+	
+	public Vector3D set(Point3D start, Point3D end) {
+		return set(end.getX() - start.getX(), end.getY() - start.getY(), end.getZ() - start.getZ());
 	}
 	
 	public Vector3D getNormalizedVector() {
-		
-		this.mMagnitude = getMagnitude();
-		
-		float X = (float) (this.mVectorCoordinates.getX() / this.mMagnitude);
-		float Y = (float) (this.mVectorCoordinates.getY() / this.mMagnitude);
-		float Z = (float) (this.mVectorCoordinates.getZ() / this.mMagnitude);
-		
-		Point3D coordinates = new Point3D(X,Y,Z);
-		
-		return new Vector3D(coordinates);
+		return new Vector3D(x, y, z).normalize();
+	}
+	
+	public Vector3D normalize() {
+		float magnitude = (float) Math.sqrt(x * x + y * y + z * z);
+		if (magnitude != 0) {
+			scale(1 / magnitude);
+		}
+		return this;
 	}
 	
 	public double getMagnitude() {
-
-		double magnitude = Math.sqrt(	this.mVectorCoordinates.getX() * this.mVectorCoordinates.getX() +
-											this.mVectorCoordinates.getY() * this.mVectorCoordinates.getY() +
-											this.mVectorCoordinates.getZ() * this.mVectorCoordinates.getZ());
-			
-		return magnitude;
+		return Math.sqrt(x * x + y * y + z * z);
+	}
+	
+	public Vector3D scale(float number) {
+		x *= number;
+		y *= number;
+		z *= number;
+		return this;
 	}
 	
 	public void multiply(float number) {
-		
-		float X = (float) this.mVectorCoordinates.getX();
-		float Y = (float) this.mVectorCoordinates.getY();
-		float Z = (float) this.mVectorCoordinates.getZ();
-		
-		this.mVectorCoordinates = new Point3D(X * number, Y * number, Z * number);
+		scale(number);
+	}
+	
+	public float dot(Vector3D other) {
+		return x * other.x + y * other.y + z * other.z;
+	}
+	
+	/** Sets this vector to {@code a} x {@code b}; either may be {@code this}. */
+	public Vector3D cross(Vector3D a, Vector3D b) {
+		return set(a.y * b.z - a.z * b.y, a.z * b.x - a.x * b.z, a.x * b.y - a.y * b.x);
+	}
+	
+	/** Angle to {@code other} in radians, 0 if either vector has zero length. */
+	public float angle(Vector3D other) {
+		return angle(x, y, z, other.x, other.y, other.z);
+	}
+	
+	public Vector3D load(float[] packed, int index) {
+		return set(packed[3 * index], packed[3 * index + 1], packed[3 * index + 2]);
+	}
+	
+	public void store(float[] packed, int index) {
+		packed[3 * index] = x;
+		packed[3 * index + 1] = y;
+		packed[3 * index + 2] = z;
+	}
+	
+	public static void set(float[] packed, int index, Point3D start, Point3D end) {
+		packed[3 * index] = end.getX() - start.getX();
+		packed[3 * index + 1] = end.getY() - start.getY();
+		packed[3 * index + 2] = end.getZ() - start.getZ();
+	}
+	
+	public static void normalize(float[] packed, int index) {
+		int i = 3 * index;
+		float magnitude = (float) Math.sqrt(packed[i] * packed[i] + packed[i + 1] * packed[i + 1] + packed[i + 2] * packed[i + 2]);
+		if (magnitude != 0) {
+			scale(packed, index, 1 / magnitude);
+		}
+	}
+	
+	public static void scale(float[] packed, int index, float number) {
+		packed[3 * index] *= number;
+		packed[3 * index + 1] *= number;
+		packed[3 * index + 2] *= number;
+	}
+	
+	public static float dot(float[] packed, int a, int b) {
+		return packed[3 * a] * packed[3 * b] + packed[3 * a + 1] * packed[3 * b + 1] + packed[3 * a + 2] * packed[3 * b + 2];
+	}
+	
+	public static float angle(float[] packed, int a, int b) {
+		return angle(packed[3 * a], packed[3 * a + 1], packed[3 * a + 2], packed[3 * b], packed[3 * b + 1], packed[3 * b + 2]);
+	}
+	
+	private static float angle(float ax, float ay, float az, float bx, float by, float bz) {
+		float lengths = (float) Math.sqrt((ax * ax + ay * ay + az * az) * (bx * bx + by * by + bz * bz));
+		if (lengths == 0) {
+			return 0;
+		}
+		float cos = (ax * bx + ay * by + az * bz) / lengths;
+		return (float) Math.acos(Math.max(-1f, Math.min(1f, cos)));
 	}
 	
 	@Override
 	public String toString() {
-		return new String(	mVectorCoordinates.getX() + "," + 
-							mVectorCoordinates.getY() + "," +
-							mVectorCoordinates.getZ()) + ",";
+		return new String(	x + "," + 
+							y + "," +
+							z) + ",";
 		
 	}
 	
 	public float X() {
-		return (float)mVectorCoordinates.getX();
+		return x;
 	}
 	
 	public float Y() {
-		return (float)mVectorCoordinates.getY();
+		return y;
 	}
 	
 	public float Z() {
-		return (float)mVectorCoordinates.getZ();
+		return z;
 	}
 
 }
@@ -0,0 +1,42 @@
+package org.OpenNI.Samples.UserTracker;
+
+import java.util.ArrayList;
+
+/**
+ * Users of all sensors of a {@link SensorManager}, merged into the world
+ * frame. Like {@link Frame}, the object is reused: it is only valid during
+ * {@link WorldListener#worldUpdated(WorldFrame)}.
+ */
+public class WorldFrame {
+
+	public static class User {
+
+		/** World id, kept while the user stays in view of any sensor. */
+		public int id;
+		/** World position of the torso, in millimetres. */
+		public float x, y, z;
+		/**
+		 * Joints in world coordinates, packed as in {@link Skeleton} with the
+		 * projective fields unused, averaged over the sensors by confidence.
+		 */
+		public final float[] joints = new float[Skeleton.LENGTH];
+		/** Number of sensors that see this user. */
+		public int sensors;
+		public String pose;
+	}
+
+	public long sequence;
+	public final ArrayList<User> users = new ArrayList<User>();
+	private final ArrayList<User> pool = new ArrayList<User>();
+
+	User addUser() {
+		int slot = users.size();
+		if (slot == pool.size()) {
+			pool.add(new User());
+		}
+		User user = pool.get(slot);
+		users.add(user);
+		return user;
+	}
+
+}
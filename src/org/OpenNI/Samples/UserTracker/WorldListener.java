@@ -0,0 +1,10 @@
+package org.OpenNI.Samples.UserTracker;
+
+/**
+ * Receives the merged users of a {@link SensorManager}, on its merge thread.
+ */
+public interface WorldListener {
+
+	void worldUpdated(WorldFrame world);
+
+}
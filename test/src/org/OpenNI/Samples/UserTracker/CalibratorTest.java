@@ -0,0 +1,53 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Silhouette measurement of {@link Calibrator} from the bounding box of
+ * {@link UserRegions} agrees with a scan of the label map.
+ */
+public class CalibratorTest {
+
+	private final Projection projection = new Projection(640, 480, 1.0144686f, 0.7898090f);
+
+	private static Frame frame(int left, int top, int right, int bottom) {
+		Frame frame = new Frame(640, 480, false);
+		for (int y = top; y <= bottom; ++y) {
+			for (int x = left; x <= right; ++x) {
+				frame.scene[y * 640 + x] = 2;
+			}
+		}
+		Frame.User user = frame.addUser(2);
+		user.comZ = 2500;
+		return frame;
+	}
+
+	@Test
+	public void boxMatchesScan() {
+		Frame frame = frame(200, 40, 330, 460);
+		float[] scanned = new float[2];
+		assertTrue(Calibrator.measure(frame, frame.getUser(2), projection, scanned));
+
+		new UserRegions().update(frame);
+		float[] boxed = new float[2];
+		assertEquals(330, frame.getUser(2).maxX);
+		assertTrue(Calibrator.measure(frame, frame.getUser(2), projection, boxed));
+		assertEquals(scanned[0], boxed[0], 1e-3f);
+		assertEquals(scanned[1], boxed[1], 1e-3f);
+		assertEquals(projection.realY(40, 2500) - projection.realY(461, 2500), boxed[0], 1e-3f);
+	}
+
+	@Test
+	public void rejectsSilhouetteOnTheBorder() {
+		Frame frame = frame(200, 40, 330, 479);
+		new UserRegions().update(frame);
+		assertFalse(Calibrator.measure(frame, frame.getUser(2), projection, new float[2]));
+		frame.getUser(2).maxX = -1;
+		assertFalse(Calibrator.measure(frame, frame.getUser(2), projection, new float[2]));
+	}
+
+}
@@ -0,0 +1,126 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Round trips of {@link DepthCodec} and of {@link DepthRecorder} into
+ * {@link RecordedDepthSource}, and rejection of corrupt streams.
+ */
+public class DepthCodecTest {
+
+	private File file;
+
+	@After
+	public void deleteFile() {
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void deltaRoundTrip() throws IOException {
+		SyntheticFrameSource source = new SyntheticFrameSource(320, 240, 2);
+		Frame frame = new Frame(320, 240, false);
+		short[] previous = new short[320 * 240];
+		short[] decoded = new short[320 * 240];
+		DepthCodec.Bytes bytes = new DepthCodec.Bytes(16);
+		for (int f = 0; f < 10; ++f) {
+			source.readFrame(frame);
+			bytes.clear();
+			DepthCodec.encodeDelta(frame.depth, previous, bytes);
+			DepthCodec.decodeDelta(reader(bytes), decoded);
+			assertArrayEquals(frame.depth, decoded);
+			System.arraycopy(frame.depth, 0, previous, 0, previous.length);
+		}
+	}
+
+	@Test
+	public void runsRoundTrip() throws IOException {
+		SyntheticFrameSource source = new SyntheticFrameSource(320, 240, 3);
+		Frame frame = new Frame(320, 240, false);
+		source.readFrame(frame);
+		DepthCodec.Bytes bytes = new DepthCodec.Bytes(16);
+		DepthCodec.encodeRuns(frame.scene, bytes);
+		short[] decoded = new short[320 * 240];
+		DepthCodec.decodeRuns(reader(bytes), decoded);
+		assertArrayEquals(frame.scene, decoded);
+	}
+
+	@Test(expected = IOException.class)
+	public void unchangedRunPastTheFrameIsRejected() throws IOException {
+		DepthCodec.Bytes bytes = new DepthCodec.Bytes(16);
+		bytes.varint(101);
+		bytes.varint(0);
+		DepthCodec.decodeDelta(reader(bytes), new short[100]);
+	}
+
+	@Test(expected = IOException.class)
+	public void labelRunPastTheFrameIsRejected() throws IOException {
+		DepthCodec.Bytes bytes = new DepthCodec.Bytes(16);
+		bytes.varint(60);
+		bytes.varint(1);
+		bytes.varint(60);
+		bytes.varint(0);
+		DepthCodec.decodeRuns(reader(bytes), new short[100]);
+	}
+
+	@Test(expected = IOException.class)
+	public void truncatedFrameIsRejected() throws IOException {
+		DepthCodec.Bytes bytes = new DepthCodec.Bytes(16);
+		bytes.varint(10);
+		bytes.varint(5);
+		bytes.varint(2);
+		DepthCodec.decodeDelta(reader(bytes), new short[100]);
+	}
+
+	@Test
+	public void recordingReplaysMapsAndUsers() throws Exception {
+		file = File.createTempFile("depth", ".dpt");
+		SyntheticFrameSource source = new SyntheticFrameSource(320, 240, 2);
+		Frame frame = new Frame(320, 240, false);
+		short[][] depths = new short[12][];
+		short[][] scenes = new short[12][];
+		DepthRecorder recorder = new DepthRecorder(file, 320, 240, 5);
+		for (int f = 0; f < depths.length; ++f) {
+			source.readFrame(frame);
+			recorder.frameReady(frame);
+			depths[f] = frame.depth.clone();
+			scenes[f] = frame.scene.clone();
+		}
+		recorder.close();
+
+		RecordedDepthSource replay = new RecordedDepthSource(file);
+		try {
+			for (int f = 0; f < depths.length; ++f) {
+				replay.readFrame(frame);
+				assertArrayEquals("depth of frame " + f, depths[f], frame.depth);
+				assertArrayEquals("labels of frame " + f, scenes[f], frame.scene);
+				assertEquals(2, frame.users.size());
+				assertEquals(1, frame.users.get(0).id);
+				assertEquals(2, frame.users.get(1).id);
+				assertEquals(2000, frame.users.get(0).comZ, 10);
+			}
+			// and again from the start
+			replay.readFrame(frame);
+			assertArrayEquals(depths[0], frame.depth);
+		} finally {
+			replay.release();
+		}
+	}
+
+	private static DepthCodec.Reader reader(DepthCodec.Bytes bytes) {
+		DepthCodec.Reader reader = new DepthCodec.Reader();
+		reader.data = Arrays.copyOf(bytes.data, bytes.length);
+		reader.limit = bytes.length;
+		return reader;
+	}
+
+}
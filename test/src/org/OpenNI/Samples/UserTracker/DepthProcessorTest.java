@@ -0,0 +1,119 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * {@link DepthProcessor} output on synthetic frames: the lookup table matches
+ * a per-pixel colorization, striped processing matches single-threaded, and
+ * region of interest mode leaves the user boxes as they are and the rest
+ * black.
+ */
+public class DepthProcessorTest {
+
+	private static final int[][] SIZES = { { 320, 240 }, { 640, 480 }, { 1280, 1024 } };
+
+	private final ForkJoinPool pool = new ForkJoinPool(4);
+
+	@After
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	private static Frame frame(int width, int height) {
+		Frame frame = new Frame(width, height);
+		new SyntheticFrameSource(width, height, 3).readFrame(frame);
+		return frame;
+	}
+
+	/** Histogram and colors computed pixel by pixel, the way the sample did before the table. */
+	private static byte[] reference(Frame frame) {
+		float[] histogram = new float[DepthProcessor.MAX_DEPTH];
+		int points = 0;
+		for (short depth : frame.depth) {
+			if (depth != 0) {
+				histogram[depth]++;
+				points++;
+			}
+		}
+		for (int i = 1; i < histogram.length; ++i) {
+			histogram[i] += histogram[i - 1];
+		}
+		if (points > 0) {
+			for (int i = 1; i < histogram.length; ++i) {
+				histogram[i] = 1.0f - histogram[i] / points;
+			}
+		}
+
+		int[] colors = DepthProcessor.colors;
+		byte[] image = new byte[frame.image.length];
+		for (int pos = 0; pos < frame.depth.length; ++pos) {
+			short depth = frame.depth[pos];
+			short user = frame.scene[pos];
+			if (depth != 0) {
+				int color = user == 0 ? colors[colors.length - 1] : colors[user % (colors.length - 1)];
+				float value = histogram[depth];
+				image[3 * pos] = (byte) (value * ((color >> 16) & 0xFF));
+				image[3 * pos + 1] = (byte) (value * ((color >> 8) & 0xFF));
+				image[3 * pos + 2] = (byte) (value * (color & 0xFF));
+			}
+		}
+		return image;
+	}
+
+	@Test
+	public void tableMatchesPerPixelColors() {
+		for (int[] size : SIZES) {
+			Frame frame = frame(size[0], size[1]);
+			new DepthProcessor(pool, Integer.MAX_VALUE).process(frame);
+			assertArrayEquals(reference(frame), frame.image);
+		}
+	}
+
+	@Test
+	public void stripesMatchSingleThread() {
+		for (int[] size : SIZES) {
+			Frame single = frame(size[0], size[1]);
+			new DepthProcessor(pool, Integer.MAX_VALUE).process(single);
+			Frame striped = frame(size[0], size[1]);
+			new DepthProcessor(pool, 0).process(striped);
+			assertArrayEquals(single.image, striped.image);
+		}
+	}
+
+	@Test
+	public void regionOfInterestKeepsUserBoxes() {
+		for (int threshold : new int[] { Integer.MAX_VALUE, 0 }) {
+			for (int[] size : SIZES) {
+				Frame full = frame(size[0], size[1]);
+				new DepthProcessor(pool, threshold).process(full);
+
+				DepthProcessor processor = new DepthProcessor(pool, threshold);
+				processor.setRegionOfInterest(true);
+				processor.setRoiMargin(0);
+				Frame roi = frame(size[0], size[1]);
+				processor.process(roi);
+
+				boolean[] inside = new boolean[roi.width * roi.height];
+				for (Frame.User user : roi.users) {
+					for (int y = user.minY; y <= user.maxY; ++y) {
+						for (int x = user.minX; x <= user.maxX; ++x) {
+							inside[y * roi.width + x] = true;
+						}
+					}
+				}
+				for (int pos = 0; pos < inside.length; ++pos) {
+					for (int c = 0; c < 3; ++c) {
+						assertEquals(inside[pos] ? full.image[3 * pos + c] : 0, roi.image[3 * pos + c]);
+					}
+				}
+			}
+		}
+	}
+
+}
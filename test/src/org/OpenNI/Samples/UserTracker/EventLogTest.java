@@ -0,0 +1,76 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+/**
+ * Line format of {@link EventLog} and its accounting of written and dropped
+ * events under load from several threads.
+ */
+public class EventLogTest {
+
+	@Test
+	public void formatsEvents() throws InterruptedException {
+		StringWriter out = new StringWriter();
+		EventLog log = new EventLog(out, 16);
+		log.log(EventLog.Type.NEW_USER, 3, null);
+		log.log(EventLog.Type.POSE_DETECTED, 3, "Psi");
+		log.log(EventLog.Type.MESSAGE, 0, "two words");
+		log.log(EventLog.Type.SAMPLE, 3, "stay", new float[] { 1, 2.5f }, 2);
+		awaitWritten(log, 4);
+		log.close();
+
+		String[] lines = out.toString().split("\n");
+		assertEquals(4, lines.length);
+		assertTrue(lines[0], lines[0].endsWith(" new-user user=3"));
+		assertTrue(lines[1], lines[1].endsWith(" pose-detected user=3 pose=Psi"));
+		assertTrue(lines[2], lines[2].endsWith(" message text=\"two words\""));
+		assertTrue(lines[3], lines[3].endsWith(" sample user=3 label=stay values=1.0,2.5"));
+	}
+
+	@Test
+	public void countsEveryEvent() throws InterruptedException {
+		StringWriter out = new StringWriter();
+		final EventLog log = new EventLog(out, 64);
+		final int perThread = 5000;
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; ++t) {
+			final int user = t + 1;
+			threads[t] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < perThread; ++i) {
+						log.log(i % 2 == 0 ? EventLog.Type.POINT : EventLog.Type.GESTURE, user, "g", i);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		awaitWritten(log, threads.length * perThread - log.getDropped());
+		log.close();
+
+		assertEquals(threads.length * perThread, log.getWritten() + log.getDropped());
+		int lines = 0;
+		for (String line : out.toString().split("\n")) {
+			if (!line.contains(" dropped ")) {
+				lines++;
+			}
+		}
+		assertEquals(log.getWritten(), lines);
+	}
+
+	/** Waits for the writer, which close() only gives a second on a loaded machine. */
+	private static void awaitWritten(EventLog log, long count) throws InterruptedException {
+		for (int wait = 0; wait < 1000 && log.getWritten() < count; ++wait) {
+			Thread.sleep(10);
+		}
+	}
+
+}
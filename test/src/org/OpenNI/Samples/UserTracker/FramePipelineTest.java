@@ -0,0 +1,98 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Frames flow through a {@link FramePipeline}, and stopping it returns even
+ * when capture is stuck in a wait that ignores interrupts.
+ */
+public class FramePipelineTest {
+
+	/** Blocks in its first read, like a sensor that stopped sending, until released. */
+	private static class StuckSource implements FrameSource {
+		final SyntheticFrameSource source = new SyntheticFrameSource(160, 120, 1);
+		volatile boolean entered;
+		volatile boolean stuck = true;
+
+		@Override
+		public int getWidth() {
+			return source.getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+			return source.getHeight();
+		}
+
+		@Override
+		public void readFrame(Frame frame) {
+			entered = true;
+			while (stuck) {
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException e) {
+					// native waits do not see interrupts either
+				}
+			}
+			source.readFrame(frame);
+		}
+
+		@Override
+		public void release() {
+		}
+	}
+
+	@Test
+	public void publishesAndStops() throws InterruptedException {
+		SensorSession session = new SensorSession(new SyntheticFrameSource(160, 120, 2), false);
+		final AtomicInteger frames = new AtomicInteger();
+		session.addListener(new FrameListener() {
+			@Override
+			public void frameReady(Frame frame) {
+				frames.incrementAndGet();
+			}
+		});
+		FramePipeline pipeline = new FramePipeline(session, 2);
+		pipeline.start();
+		for (int wait = 0; wait < 500 && frames.get() < 10; ++wait) {
+			Thread.sleep(10);
+		}
+		assertTrue(pipeline.stop());
+		assertTrue(frames.get() >= 10);
+	}
+
+	@Test
+	public void stopDoesNotWaitForAStuckCapture() throws InterruptedException {
+		StuckSource source = new StuckSource();
+		SensorSession session = new SensorSession(source, false);
+		final AtomicInteger frames = new AtomicInteger();
+		session.addListener(new FrameListener() {
+			@Override
+			public void frameReady(Frame frame) {
+				frames.incrementAndGet();
+			}
+		});
+		FramePipeline pipeline = new FramePipeline(session, 2);
+		pipeline.start();
+		for (int wait = 0; wait < 500 && !source.entered; ++wait) {
+			Thread.sleep(10);
+		}
+
+		long start = System.nanoTime();
+		assertFalse(pipeline.stop(100, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+
+		// once the wait returns, the frame is not published
+		source.stuck = false;
+		Thread.sleep(100);
+		assertEquals(0, frames.get());
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * {@link GestureEngine} on the swinging arms of {@link SyntheticFrameSource}:
+ * a template cut from the stream is found again where it was cut from, with
+ * its latency counted from the capture of the frame.
+ */
+public class GestureEngineTest {
+
+	private static final int D = PoseDataset.DIMENSIONS;
+
+	@Test
+	public void findsTemplateWhereItWasCut() {
+		final ArrayList<GestureEvent> events = new ArrayList<GestureEvent>();
+		GestureEngine engine = new GestureEngine();
+		engine.addTemplate(template(10, 29));
+		engine.addListener(new GestureListener() {
+			@Override
+			public void gestureDetected(GestureEvent event) {
+				events.add(event);
+			}
+		});
+
+		SyntheticFrameSource source = new SyntheticFrameSource(640, 480, 1);
+		SkeletonProcessor skeleton = new SkeletonProcessor();
+		Frame frame = new Frame(640, 480, false);
+		long[] timestamps = new long[40];
+		for (int f = 0; f < timestamps.length; ++f) {
+			source.readFrame(frame);
+			skeleton.process(frame);
+			timestamps[f] = frame.timestamp;
+			// captured 50 ms before it reaches the engine
+			frame.capturedNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(50);
+			engine.frameReady(frame);
+		}
+
+		assertTrue("no gesture recognised", events.size() > 0);
+		GestureEvent event = events.get(0);
+		assertEquals(1, event.userId);
+		assertEquals("swing", event.gesture);
+		assertEquals(timestamps[29], event.endTimestamp);
+		assertEquals(timestamps[10], event.startTimestamp);
+		assertEquals(0, event.distance, 1e-3f);
+		assertTrue("latency " + event.latencyNanos, event.latencyNanos >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	@Test
+	public void ignoresOtherMotion() {
+		final ArrayList<GestureEvent> events = new ArrayList<GestureEvent>();
+		GestureEngine engine = new GestureEngine();
+		GestureTemplate swing = template(10, 29);
+		// the same frames backwards: the arms move the other way
+		float[] frames = new float[swing.getLength() * D];
+		float[] forward = frames(10, 29);
+		for (int f = 0; f < swing.getLength(); ++f) {
+			System.arraycopy(forward, (swing.getLength() - 1 - f) * D, frames, f * D, D);
+		}
+		engine.addTemplate(new GestureTemplate("reverse", frames, swing.getLength(), 0.01f));
+		engine.addListener(new GestureListener() {
+			@Override
+			public void gestureDetected(GestureEvent event) {
+				events.add(event);
+			}
+		});
+
+		SyntheticFrameSource source = new SyntheticFrameSource(640, 480, 1);
+		SkeletonProcessor skeleton = new SkeletonProcessor();
+		Frame frame = new Frame(640, 480, false);
+		for (int f = 0; f < 31; ++f) {
+			source.readFrame(frame);
+			skeleton.process(frame);
+			engine.frameReady(frame);
+		}
+		assertEquals(0, events.size());
+	}
+
+	private static GestureTemplate template(int first, int last) {
+		return new GestureTemplate("swing", frames(first, last), last - first + 1, 0.01f);
+	}
+
+	/** Bone vectors of frames {@code first} to {@code last} of a one-user synthetic source. */
+	private static float[] frames(int first, int last) {
+		SyntheticFrameSource source = new SyntheticFrameSource(640, 480, 1);
+		SkeletonProcessor skeleton = new SkeletonProcessor();
+		Frame frame = new Frame(640, 480, false);
+		float[] frames = new float[(last - first + 1) * D];
+		for (int f = 0; f <= last; ++f) {
+			source.readFrame(frame);
+			if (f >= first) {
+				skeleton.process(frame);
+				System.arraycopy(frame.users.get(0).bones, 0, frames, (f - first) * D, D);
+			}
+		}
+		return frames;
+	}
+
+}
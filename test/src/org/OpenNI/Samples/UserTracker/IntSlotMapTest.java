@@ -0,0 +1,55 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * {@link IntSlotMap} against a {@link HashMap}, with keys chosen to collide
+ * so removals have to shift back long probe runs.
+ */
+public class IntSlotMapTest {
+
+	@Test
+	public void matchesHashMap() {
+		Random random = new Random(7);
+		IntSlotMap map = new IntSlotMap(2);
+		HashMap<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for (int op = 0; op < 20000; ++op) {
+			// few distinct keys, negative ones too, so runs wrap and repeat
+			int key = random.nextInt(64) - 16;
+			if (random.nextInt(3) == 0) {
+				Integer slot = expected.remove(key);
+				assertEquals(slot == null ? -1 : slot.intValue(), map.remove(key));
+			} else {
+				int slot = random.nextInt(1000);
+				expected.put(key, slot);
+				map.put(key, slot);
+			}
+			assertEquals(expected.size(), map.size());
+			for (int k = -16; k < 48; ++k) {
+				Integer slot = expected.get(k);
+				assertEquals("key " + k, slot == null ? -1 : slot.intValue(), map.get(k));
+			}
+		}
+	}
+
+	@Test
+	public void clearEmptiesTheMap() {
+		IntSlotMap map = new IntSlotMap(4);
+		for (int i = 0; i < 100; ++i) {
+			map.put(i, i);
+		}
+		map.clear();
+		assertEquals(0, map.size());
+		for (int i = 0; i < 100; ++i) {
+			assertEquals(-1, map.get(i));
+		}
+		map.put(5, 1);
+		assertEquals(1, map.get(5));
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Percentiles and mean of {@link LatencyHistogram} against the exact values,
+ * and the mean of {@link PipelineMetrics} over the same interval as its
+ * percentiles.
+ */
+public class LatencyHistogramTest {
+
+	@Test
+	public void staysWithinBucketPrecision() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		Random random = new Random(3);
+		long[] values = new long[10000];
+		double sum = 0;
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = (long) Math.exp(random.nextDouble() * 20);
+			histogram.record(values[i]);
+			sum += values[i];
+		}
+		Arrays.sort(values);
+		assertEquals(values.length, histogram.getCount());
+		assertEquals(sum / values.length, histogram.getMean(), sum / values.length / 32);
+		long median = values[values.length / 2 - 1];
+		assertEquals(median, histogram.getValueAtPercentile(50), median / 32 + 1);
+		assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100), values[values.length - 1] / 32);
+	}
+
+	@Test
+	public void meanFollowsTheInterval() {
+		PipelineMetrics metrics = new PipelineMetrics();
+		for (int i = 0; i < 100; ++i) {
+			metrics.record(PipelineMetrics.CAPTURE, System.nanoTime() - 10000000);
+		}
+		metrics.roll();
+		for (int i = 0; i < 100; ++i) {
+			metrics.record(PipelineMetrics.CAPTURE, System.nanoTime() - 1000000);
+		}
+		metrics.roll();
+		String stage = metrics.getStages()[PipelineMetrics.CAPTURE];
+		assertEquals(1, metrics.getPercentileMillis(stage, 50), 0.1);
+		assertEquals(1, metrics.getMeanMillis(stage), 0.1);
+	}
+
+}
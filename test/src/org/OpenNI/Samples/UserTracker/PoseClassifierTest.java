@@ -0,0 +1,75 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Samples added to a live {@link PoseClassifier}: near duplicates of the same
+ * label are dropped, and the number of added samples is capped.
+ */
+public class PoseClassifierTest {
+
+	private static final int D = PoseDataset.DIMENSIONS;
+
+	private static float[] sample(Random random) {
+		float[] sample = new float[D];
+		for (int i = 0; i < D; ++i) {
+			sample[i] = (float) random.nextGaussian() * 50;
+		}
+		return sample;
+	}
+
+	private static float[] jitter(Random random, float[] sample, float amount) {
+		float[] copy = sample.clone();
+		for (int i = 0; i < D; ++i) {
+			copy[i] += (float) random.nextGaussian() * amount;
+		}
+		return copy;
+	}
+
+	private static PoseClassifier classifier(Random random) {
+		PoseDataset dataset = new PoseDataset();
+		for (int i = 0; i < 30; ++i) {
+			dataset.add(sample(random), "p" + (i % 3));
+		}
+		return new PoseClassifier(dataset, 5);
+	}
+
+	@Test
+	public void dropsNearDuplicates() {
+		Random random = new Random(5);
+		PoseClassifier classifier = classifier(random);
+		float[] pose = sample(random);
+		assertTrue(classifier.add(pose, "raise"));
+
+		// a second of a held pose at 30 fps adds nothing after the first
+		for (int i = 0; i < 30; ++i) {
+			assertFalse(classifier.add(jitter(random, pose, 0.2f), "raise"));
+		}
+		assertEquals(31, classifier.getDataset().size());
+		assertEquals(1, classifier.getAdded());
+
+		// the same pose under another label, or a different pose, is kept
+		assertTrue(classifier.add(jitter(random, pose, 0.2f), "wave"));
+		assertTrue(classifier.add(sample(random), "raise"));
+		assertEquals(33, classifier.getDataset().size());
+	}
+
+	@Test
+	public void capsAddedSamples() {
+		Random random = new Random(6);
+		PoseClassifier classifier = classifier(random);
+		classifier.setMaxAdded(10);
+		for (int i = 0; i < 25; ++i) {
+			assertEquals(i < 10, classifier.add(sample(random), "p" + (i % 3)));
+		}
+		assertEquals(10, classifier.getAdded());
+		assertEquals(40, classifier.getDataset().size());
+	}
+
+}
@@ -0,0 +1,108 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Nearest neighbour and radius queries of {@link PoseIndex} against a linear
+ * scan, over the tree and over samples added after it was built.
+ */
+public class PoseIndexTest {
+
+	private static final int D = PoseDataset.DIMENSIONS;
+
+	@Test
+	public void nearestMatchesLinearScan() {
+		Random random = new Random(3);
+		PoseDataset dataset = dataset(random, 2000);
+		PoseIndex index = new PoseIndex(dataset);
+		check(random, dataset, index);
+
+		// pending samples are scanned until the background build swaps the tree in
+		for (int i = 0; i < 600; ++i) {
+			dataset.add(sample(random), "p" + (i % 3));
+		}
+		check(random, dataset, index);
+	}
+
+	@Test
+	public void rebuildIndexesEverySample() throws InterruptedException {
+		Random random = new Random(4);
+		PoseDataset dataset = dataset(random, 1000);
+		PoseIndex index = new PoseIndex(dataset);
+		for (int i = 0; i < 500; ++i) {
+			dataset.add(sample(random), "p0");
+		}
+		// the first query starts a build in the background
+		index.nearest(sample(random), new int[1], new float[1]);
+		for (int wait = 0; wait < 500 && index.getIndexed() < 1500; ++wait) {
+			Thread.sleep(10);
+		}
+		assertEquals(1500, index.getIndexed());
+		check(random, dataset, index);
+	}
+
+	private static void check(Random random, PoseDataset dataset, PoseIndex index) {
+		int[] nearest = new int[5];
+		float[] distances = new float[5];
+		int[] within = new int[dataset.size()];
+		for (int q = 0; q < 50; ++q) {
+			float[] query = sample(random);
+			float[] all = new float[dataset.size()];
+			for (int s = 0; s < all.length; ++s) {
+				all[s] = distance(dataset, s, query);
+			}
+			float[] sorted = all.clone();
+			Arrays.sort(sorted);
+
+			assertEquals(5, index.nearest(query, nearest, distances));
+			for (int i = 0; i < 5; ++i) {
+				assertEquals(sorted[i], distances[i], 1e-3f);
+				assertEquals(all[nearest[i]], distances[i], 1e-3f);
+			}
+
+			float radius = sorted[20];
+			int expected = 0;
+			for (float d : all) {
+				if (d <= radius) {
+					expected++;
+				}
+			}
+			int found = index.withinRadius(query, radius, within);
+			assertEquals(expected, found);
+			for (int i = 0; i < found; ++i) {
+				assertEquals(true, all[within[i]] <= radius);
+			}
+		}
+	}
+
+	private static PoseDataset dataset(Random random, int size) {
+		PoseDataset dataset = new PoseDataset(size);
+		for (int i = 0; i < size; ++i) {
+			dataset.add(sample(random), "p" + (i % 3));
+		}
+		return dataset;
+	}
+
+	private static float[] sample(Random random) {
+		float[] sample = new float[D];
+		for (int i = 0; i < D; ++i) {
+			sample[i] = (float) random.nextGaussian() * 10;
+		}
+		return sample;
+	}
+
+	private static float distance(PoseDataset dataset, int sample, float[] query) {
+		float sum = 0;
+		for (int i = 0; i < D; ++i) {
+			float d = dataset.getFeatures()[sample * D + i] - query[i];
+			sum += d * d;
+		}
+		return (float) Math.sqrt(sum);
+	}
+
+}
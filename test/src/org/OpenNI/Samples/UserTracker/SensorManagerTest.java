@@ -0,0 +1,110 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Two sensors placed with different {@link Extrinsics} that see the same
+ * person report one world user; stale and jointless users are left out.
+ */
+public class SensorManagerTest {
+
+	private static final int TORSO = Skeleton.offset(org.OpenNI.SkeletonJoint.TORSO);
+
+	private final Extrinsics placeA = new Extrinsics(Math.toRadians(30), Math.toRadians(-10), Math.toRadians(5),
+			-1500, 200, 500);
+	private final Extrinsics placeB = new Extrinsics(Math.toRadians(-60), Math.toRadians(15), 0, 2000, -100, 3000);
+	private SensorManager manager;
+	private SensorManager.Sensor sensorA, sensorB;
+	private WorldFrame world;
+	private Frame frameA, frameB;
+
+	@Before
+	public void setUp() {
+		manager = new SensorManager();
+		sensorA = manager.addSensor("a", session(), placeA);
+		sensorB = manager.addSensor("b", session(), placeB);
+		manager.addListener(new WorldListener() {
+			@Override
+			public void worldUpdated(WorldFrame frame) {
+				world = frame;
+			}
+		});
+
+		frameA = new Frame(640, 480, false);
+		new SyntheticFrameSource(640, 480, 1).readFrame(frameA);
+		// what sensor B sees of the same person: A's joints moved to the world and back into B
+		frameB = new Frame(640, 480, false);
+		frameB.copyUsers(frameA);
+		Extrinsics toB = placeB.inverse();
+		float[] point = new float[3];
+		float[] joints = frameB.users.get(0).joints;
+		for (int base = 0; base < Skeleton.LENGTH; base += Skeleton.STRIDE) {
+			placeA.apply(joints[base + Skeleton.X], joints[base + Skeleton.Y], joints[base + Skeleton.Z], point, 0);
+			toB.apply(point[0], point[1], point[2], joints, base + Skeleton.X);
+		}
+	}
+
+	private static SensorSession session() {
+		return new SensorSession(new SyntheticFrameSource(640, 480, 1), false);
+	}
+
+	@Test
+	public void inverseUndoesTheTransform() {
+		float[] world = new float[3];
+		float[] back = new float[3];
+		placeA.apply(100, -200, 2500, world, 0);
+		placeA.inverse().apply(world[0], world[1], world[2], back, 0);
+		assertEquals(100, back[0], 0.05f);
+		assertEquals(-200, back[1], 0.05f);
+		assertEquals(2500, back[2], 0.05f);
+	}
+
+	@Test
+	public void mergesOnePersonSeenByTwoSensors() {
+		sensorA.frameReady(frameA);
+		sensorB.frameReady(frameB);
+		manager.merge();
+
+		assertEquals(1, world.users.size());
+		WorldFrame.User user = world.users.get(0);
+		assertEquals(2, user.sensors);
+		float[] torso = new float[3];
+		float[] joints = frameA.users.get(0).joints;
+		placeA.apply(joints[TORSO + Skeleton.X], joints[TORSO + Skeleton.Y], joints[TORSO + Skeleton.Z], torso, 0);
+		assertEquals(torso[0], user.x, 1);
+		assertEquals(torso[1], user.y, 1);
+		assertEquals(torso[2], user.z, 1);
+	}
+
+	@Test
+	public void dropsStaleUsers() {
+		manager.setMaxAge(100, TimeUnit.MILLISECONDS);
+		frameB.capturedNanos = System.nanoTime() - TimeUnit.SECONDS.toNanos(1);
+		sensorA.frameReady(frameA);
+		sensorB.frameReady(frameB);
+		manager.merge();
+
+		assertEquals(1, world.users.size());
+		assertEquals(1, world.users.get(0).sensors);
+	}
+
+	@Test
+	public void skipsUsersWithoutConfidentJoints() {
+		float[] joints = frameB.users.get(0).joints;
+		for (int base = 0; base < Skeleton.LENGTH; base += Skeleton.STRIDE) {
+			joints[base + Skeleton.CONFIDENCE] = 0;
+		}
+		sensorA.frameReady(frameA);
+		sensorB.frameReady(frameB);
+		manager.merge();
+
+		assertEquals(1, world.users.size());
+		assertEquals(1, world.users.get(0).sensors);
+	}
+
+}
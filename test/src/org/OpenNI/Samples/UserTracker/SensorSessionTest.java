@@ -0,0 +1,93 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * A {@link SensorSession} reads each frame once from its source and hands the
+ * same snapshot to every listener.
+ */
+public class SensorSessionTest {
+
+	/** Counts the frames read from a {@link SyntheticFrameSource}. */
+	private static class CountingSource implements FrameSource {
+		final SyntheticFrameSource source = new SyntheticFrameSource(320, 240, 2);
+		int reads;
+
+		@Override
+		public int getWidth() {
+			return source.getWidth();
+		}
+
+		@Override
+		public int getHeight() {
+			return source.getHeight();
+		}
+
+		@Override
+		public void readFrame(Frame frame) {
+			reads++;
+			source.readFrame(frame);
+		}
+
+		@Override
+		public void release() {
+			source.release();
+		}
+	}
+
+	/** Remembers the last frame it received and how many users it had. */
+	private static class Receiver implements FrameListener {
+		Frame frame;
+		int users;
+		int frames;
+
+		@Override
+		public void frameReady(Frame frame) {
+			this.frame = frame;
+			this.users = frame.users.size();
+			frames++;
+		}
+	}
+
+	private CountingSource source;
+	private SensorSession session;
+	private Receiver first, second;
+
+	@Before
+	public void setUp() {
+		source = new CountingSource();
+		session = new SensorSession(source);
+		first = new Receiver();
+		second = new Receiver();
+		session.addListener(first);
+		session.addListener(second);
+	}
+
+	@Test
+	public void everyListenerGetsTheSameFrame() {
+		session.update();
+		assertEquals(1, source.reads);
+		assertEquals(1, first.frames);
+		assertEquals(1, second.frames);
+		assertSame(first.frame, second.frame);
+		assertEquals(2, first.users);
+		assertEquals(2, second.users);
+		assertEquals(320, first.frame.width);
+	}
+
+	@Test
+	public void removedListenerGetsNothing() {
+		session.removeListener(second);
+		session.update();
+		session.update();
+		assertEquals(2, source.reads);
+		assertEquals(2, first.frames);
+		assertNull(second.frame);
+	}
+
+}
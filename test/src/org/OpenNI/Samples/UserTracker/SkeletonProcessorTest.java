@@ -0,0 +1,57 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.OpenNI.SkeletonJoint;
+import org.junit.Test;
+
+/**
+ * Bone vectors of {@link SkeletonProcessor}: joints the tracker is not
+ * confident about still shape their bones, only joints left out by the joint
+ * demand zero them.
+ */
+public class SkeletonProcessorTest {
+
+	private static Frame frame(int requiredJoints) {
+		Frame frame = new Frame(640, 480, false);
+		frame.requiredJoints = requiredJoints;
+		new SyntheticFrameSource(640, 480, 1).readFrame(frame);
+		return frame;
+	}
+
+	private static float length(float[] bones, int bone) {
+		float x = bones[3 * bone], y = bones[3 * bone + 1], z = bones[3 * bone + 2];
+		return (float) Math.sqrt(x * x + y * y + z * z);
+	}
+
+	@Test
+	public void zeroConfidenceKeepsBones() {
+		SkeletonProcessor processor = new SkeletonProcessor();
+		Frame confident = frame(JointDemand.ALL);
+		processor.process(confident);
+
+		Frame occluded = frame(JointDemand.ALL);
+		float[] joints = occluded.users.get(0).joints;
+		joints[Skeleton.offset(SkeletonJoint.LEFT_HAND) + Skeleton.CONFIDENCE] = 0;
+		joints[Skeleton.offset(SkeletonJoint.RIGHT_KNEE) + Skeleton.CONFIDENCE] = 0;
+		processor.process(occluded);
+
+		assertTrue(occluded.users.get(0).hasBones);
+		assertArrayEquals(confident.users.get(0).bones, occluded.users.get(0).bones, 0);
+	}
+
+	@Test
+	public void unrequestedJointsZeroTheirBones() {
+		Frame frame = frame(JointDemand.UPPER);
+		new SkeletonProcessor().process(frame);
+		float[] bones = frame.users.get(0).bones;
+		for (int b = 0; b < SkeletonProcessor.BONES.length; ++b) {
+			boolean fetched = Skeleton.contains(JointDemand.UPPER, SkeletonProcessor.BONES[b][0])
+					&& Skeleton.contains(JointDemand.UPPER, SkeletonProcessor.BONES[b][1]);
+			assertEquals(fetched ? SkeletonProcessor.BONE_LENGTH : 0, length(bones, b), 1e-3f);
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Frames of {@link SyntheticFrameSource} written by {@link SkeletonRecorder}
+ * come back unchanged from {@link RecordedSkeletonSource}, empty frames and
+ * their timestamps included.
+ */
+public class SkeletonRecordingTest {
+
+	private File file;
+
+	@After
+	public void deleteFile() {
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void replaysWhatWasRecorded() throws Exception {
+		file = File.createTempFile("skeleton", ".skl");
+		SyntheticFrameSource source = new SyntheticFrameSource(640, 480, 2);
+		Frame frame = new Frame(640, 480, false);
+		float[][] joints = new float[20][];
+		long[] timestamps = new long[20];
+		SkeletonRecorder recorder = new SkeletonRecorder(file, 640, 480);
+		for (int f = 0; f < joints.length; ++f) {
+			source.readFrame(frame);
+			if (f >= 15) {
+				// nobody tracked at the end of the recording
+				frame.clearUsers();
+			}
+			joints[f] = frame.users.isEmpty() ? null : frame.users.get(1).joints.clone();
+			timestamps[f] = frame.timestamp;
+			recorder.frameReady(frame);
+		}
+		recorder.close();
+
+		RecordedSkeletonSource replay = new RecordedSkeletonSource(file);
+		try {
+			assertEquals(joints.length, replay.getFrameCount());
+			for (int f = 0; f < joints.length; ++f) {
+				replay.readFrame(frame);
+				assertEquals(timestamps[f], frame.timestamp);
+				if (joints[f] == null) {
+					assertEquals(0, frame.users.size());
+					continue;
+				}
+				assertEquals(2, frame.users.size());
+				Frame.User user = frame.getUser(2);
+				for (int j = 0; j < Skeleton.LENGTH; j += Skeleton.STRIDE) {
+					assertEquals(joints[f][j + Skeleton.X], user.joints[j + Skeleton.X], 1e-3f);
+					assertEquals(joints[f][j + Skeleton.Z], user.joints[j + Skeleton.Z], 1e-3f);
+					assertEquals(joints[f][j + Skeleton.PROJECTIVE_X], user.joints[j + Skeleton.PROJECTIVE_X], 0.5f);
+				}
+			}
+		} finally {
+			replay.release();
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package org.OpenNI.Samples.UserTracker;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Lifecycle, time to live and eviction of {@link UserRegistry}, driven by
+ * hand-made frames one tenth of a second apart.
+ */
+public class UserRegistryTest {
+
+	private static final long STEP = 100000;
+
+	private UserRegistry registry;
+	private Frame frame;
+	private long time;
+	private final ArrayList<String> changes = new ArrayList<String>();
+
+	@Before
+	public void setUp() {
+		registry = new UserRegistry(2);
+		registry.setTimeToLive(1, TimeUnit.SECONDS);
+		registry.addListener(new UserListener() {
+			@Override
+			public void userChanged(UserRegistry.Entry user, UserLifecycle previous) {
+				changes.add(user.getUserId() + ":" + previous + ">" + user.getLifecycle());
+			}
+		});
+		frame = new Frame(4, 4, false);
+	}
+
+	/** Runs a frame with the given users, a positive id is tracked, a negative one calibrating. */
+	private void step(int... ids) {
+		time += STEP;
+		frame.clearUsers();
+		frame.timestamp = time;
+		for (int id : ids) {
+			Frame.User user = frame.addUser(Math.abs(id));
+			user.state = id > 0 ? UserState.TRACKING : UserState.CALIBRATING;
+		}
+		registry.process(frame);
+	}
+
+	@Test
+	public void followsTheLifecycle() {
+		step(-1);
+		step(-1);
+		step(1);
+		step();
+		step(1);
+		assertEquals("[1:EXPIRED>NEW, 1:NEW>CALIBRATING, 1:CALIBRATING>TRACKING, 1:TRACKING>LOST, 1:LOST>TRACKING]",
+				changes.toString());
+		assertEquals(1, registry.find(1).getReturns());
+		assertEquals(registry.find(1).getSlot(), frame.getUser(1).slot);
+	}
+
+	@Test
+	public void expiresAfterTheTimeToLive() {
+		step(1);
+		for (int i = 0; i < 10; ++i) {
+			step();
+		}
+		assertEquals(UserLifecycle.LOST, registry.find(1).getLifecycle());
+		step();
+		assertNull(registry.find(1));
+		assertEquals(0, registry.size());
+		assertEquals(1, registry.getExpired());
+	}
+
+	@Test
+	public void evictsTheUserLostLongest() {
+		step(1, 2);
+		step(2);
+		step();
+		// both lost, 1 for longer: the newcomer takes its slot
+		step(3);
+		assertNull(registry.find(1));
+		assertEquals(UserLifecycle.LOST, registry.find(2).getLifecycle());
+		assertEquals(UserLifecycle.NEW, registry.find(3).getLifecycle());
+		assertEquals(2, registry.size());
+	}
+
+	@Test
+	public void rejectsWhenEveryoneIsInView() {
+		step(1, 2, 3);
+		assertNull(registry.find(3));
+		assertEquals(-1, frame.getUser(3).slot);
+		assertEquals(1, registry.getRejected());
+		assertEquals(2, registry.size());
+	}
+
+}